@@ -0,0 +1,97 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.datasource.DataSourcePlugin;
+import org.chobit.ar4j.core.dialect.MultiRowInsertDialect;
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基准测试使用的H2内存库，每次创建一个独立的库。使用连接池，避免测量结果被建立连接的开销淹没。
+ */
+final class BenchDatabase implements DataSourcePlugin {
+
+    private static final AtomicInteger seq = new AtomicInteger();
+
+    private final String url;
+
+    private final JdbcConnectionPool dataSource;
+
+    private BenchDatabase(String name) {
+        this.url = "jdbc:h2:mem:" + name + "_" + seq.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        this.dataSource = JdbcConnectionPool.create(url, "sa", "");
+        this.dataSource.setMaxConnections(32);
+    }
+
+
+    static BenchDatabase create(String name, String... ddl) throws SQLException {
+        BenchDatabase db = new BenchDatabase(name);
+        db.execute(ddl);
+        return db;
+    }
+
+
+    ArConfig newConfig() {
+        return new ArConfig(url, this, new H2Dialect());
+    }
+
+
+    void execute(String... sql) throws SQLException {
+        Connection conn = dataSource.getConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            try {
+                for (String s : sql) {
+                    stmt.execute(s);
+                }
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            conn.close();
+        }
+    }
+
+
+    /**
+     * 关闭内存库，释放其中的数据
+     */
+    void shutdown() throws SQLException {
+        execute("shutdown");
+        dataSource.dispose();
+    }
+
+
+    @Override
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+
+    static final class H2Dialect implements MultiRowInsertDialect {
+
+        @Override
+        public String defaultPrimaryKey() {
+            return "id";
+        }
+
+        @Override
+        public String sqlShowColumns() {
+            return "select * from ${TABLE_NAME} where 1=0";
+        }
+
+        @Override
+        public String sqlShowTables() {
+            return "show tables";
+        }
+
+        @Override
+        public int maxInsertParams() {
+            return 4096;
+        }
+    }
+}
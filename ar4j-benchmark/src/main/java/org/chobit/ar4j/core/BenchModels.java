@@ -0,0 +1,45 @@
+package org.chobit.ar4j.core;
+
+import java.util.List;
+
+/**
+ * 基准测试使用的Model类
+ */
+final class BenchModels {
+
+    static final String USER_DDL = "create table bench_user(id bigint auto_increment primary key, "
+            + "username varchar(32), password varchar(32), age int, insert_time timestamp)";
+
+
+    public static class BenchUser extends Model<BenchUser> {
+    }
+
+
+    public static class BenchWide extends Model<BenchWide> {
+    }
+
+
+    public static class BenchLog extends SeqModel<BenchLog> {
+
+        static volatile String latest = "00000001";
+
+        @Override
+        public String latestSuffix() {
+            return latest;
+        }
+
+        @Override
+        public String suffixRegex() {
+            return "\\d{8}";
+        }
+
+        List<BenchLog> findByLevel(int level) {
+            return findInSeq("select *", "level = ?", level);
+        }
+    }
+
+
+    private BenchModels() {
+        throw new UnsupportedOperationException("Private constructor, cannot be accessed.");
+    }
+}
@@ -0,0 +1,131 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.BenchModels.BenchUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单表增删改查的基准测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrudBenchmark {
+
+    private static final int SEED_ROWS = 1000;
+
+    private BenchDatabase db;
+
+    private ArConfig config;
+
+    private BenchUser updateTarget;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        db = BenchDatabase.create("crud", BenchModels.USER_DDL);
+        config = db.newConfig();
+        config.regTable(BenchUser.class);
+        List<BenchUser> seed = new ArrayList<BenchUser>(SEED_ROWS);
+        for (int i = 0; i < SEED_ROWS; i++) {
+            seed.add(newUser(i));
+        }
+        new BenchUser().batchSave(seed);
+        updateTarget = new BenchUser().findByPrimaryKey(1L);
+    }
+
+    /**
+     * 删除测量中写入的记录，保持表的大小稳定
+     */
+    @TearDown(Level.Iteration)
+    public void trim() throws Exception {
+        db.execute("delete from bench_user where id > " + SEED_ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.shutdown();
+    }
+
+
+    @Benchmark
+    public boolean save() {
+        return newUser(1).save();
+    }
+
+    @Benchmark
+    public List<BenchUser> batchSave(Batch batch) {
+        new BenchUser().batchSave(batch.users);
+        return batch.users;
+    }
+
+    @Benchmark
+    public List<BenchUser> batchSaveMultiRow(Batch batch) {
+        config.setMultiRowInsert(true);
+        try {
+            new BenchUser().batchSave(batch.users);
+        } finally {
+            config.setMultiRowInsert(false);
+        }
+        return batch.users;
+    }
+
+    @Benchmark
+    public boolean update() {
+        return updateTarget.set("age", ThreadLocalRandom.current().nextInt(100)).update();
+    }
+
+    @Benchmark
+    public BenchUser findByPrimaryKey() {
+        return new BenchUser().findByPrimaryKey((long) ThreadLocalRandom.current().nextInt(1, SEED_ROWS + 1));
+    }
+
+
+    private static BenchUser newUser(int i) {
+        return new BenchUser()
+                .set("username", "user" + i)
+                .set("password", "password")
+                .set("age", i % 100)
+                .set("insert_time", new Timestamp(System.currentTimeMillis()));
+    }
+
+
+    /**
+     * 批量写入的记录，只有批量写入的测试使用
+     */
+    @State(Scope.Benchmark)
+    public static class Batch {
+
+        @Param({"100", "1000"})
+        public int size;
+
+        private List<BenchUser> users;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            users = new ArrayList<BenchUser>(size);
+            for (int i = 0; i < size; i++) {
+                users.add(newUser(i));
+            }
+        }
+    }
+}
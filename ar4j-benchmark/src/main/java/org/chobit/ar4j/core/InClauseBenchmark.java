@@ -0,0 +1,60 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.BenchModels.BenchUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拼装in子句(ArHelper.buildInClause)的基准测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InClauseBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private BenchDatabase db;
+
+    private Collection<Object> ids;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        db = BenchDatabase.create("in", BenchModels.USER_DDL);
+        db.newConfig().regTable(BenchUser.class);
+        ids = new ArrayList<Object>(size);
+        for (long i = 0; i < size; i++) {
+            ids.add(i * 7919);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.shutdown();
+    }
+
+
+    @Benchmark
+    public String buildInClause() {
+        return ArHelper.buildInClause(BenchUser.class, "id", ids);
+    }
+}
@@ -0,0 +1,123 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.BenchModels.BenchWide;
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 结果集映射(ArHelper.obtainResult)及按列读取(ColumnarReader)的基准测试。
+ * <p>
+ * 结果集预先复制到内存中，每次测量只重置游标，不包含数据库查询的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int width;
+
+    @Param({"1", "100", "10000"})
+    public int rows;
+
+    private BenchDatabase db;
+
+    private Table table;
+
+    private SimpleResultSet rs;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        StringBuilder ddl = new StringBuilder("create table bench_wide(id bigint primary key");
+        StringBuilder insert = new StringBuilder("insert into bench_wide select x");
+        for (int i = 1; i < width; i++) {
+            if (i % 2 == 0) {
+                ddl.append(", c").append(i).append(" int");
+                insert.append(", x + ").append(i);
+            } else {
+                ddl.append(", c").append(i).append(" varchar(32)");
+                insert.append(", concat('v', x)");
+            }
+        }
+        ddl.append(')');
+        insert.append(" from system_range(1, ").append(rows).append(") t(x)");
+        db = BenchDatabase.create("mapping", ddl.toString(), insert.toString());
+        ArConfig config = db.newConfig();
+        config.regTable(BenchWide.class);
+        table = Ar.getTable(BenchWide.class);
+        rs = copy(db, "select * from bench_wide");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.shutdown();
+    }
+
+
+    @Benchmark
+    public List<BenchWide> obtainResult() throws Exception {
+        rs.beforeFirst();
+        return ArHelper.obtainResult(table, rs);
+    }
+
+
+    @Benchmark
+    public Columns readColumns() throws Exception {
+        rs.beforeFirst();
+        return ColumnarReader.of(table, rs.getMetaData()).read(rs, 0);
+    }
+
+
+    /**
+     * 将查询结果复制为可重复读取的内存结果集，保留原有的列类型
+     */
+    private static SimpleResultSet copy(BenchDatabase db, String sql) throws Exception {
+        Connection conn = db.getDataSource().getConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement(sql);
+            ResultSet source = ps.executeQuery();
+            ResultSetMetaData meta = source.getMetaData();
+            SimpleResultSet copy = new SimpleResultSet();
+            copy.setAutoClose(false);
+            int count = meta.getColumnCount();
+            for (int i = 1; i <= count; i++) {
+                copy.addColumn(meta.getColumnLabel(i), meta.getColumnType(i), meta.getColumnTypeName(i),
+                        meta.getPrecision(i), meta.getScale(i));
+            }
+            while (source.next()) {
+                Object[] row = new Object[count];
+                for (int i = 1; i <= count; i++) {
+                    row[i - 1] = source.getObject(i);
+                }
+                copy.addRow(row);
+            }
+            source.close();
+            ps.close();
+            return copy;
+        } finally {
+            conn.close();
+        }
+    }
+}
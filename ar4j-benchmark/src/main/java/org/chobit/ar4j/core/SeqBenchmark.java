@@ -0,0 +1,83 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.BenchModels.BenchLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分表查询(SeqModel.findInSeq)的基准测试，parallelism为0时串行查询各分表
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeqBenchmark {
+
+    private static final int ROWS_PER_SHARD = 20;
+
+    @Param({"16", "128"})
+    public int shards;
+
+    @Param({"0", "4"})
+    public int parallelism;
+
+    private BenchDatabase db;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String[] ddl = new String[shards * 2];
+        for (int i = 1; i <= shards; i++) {
+            String table = "bench_log_" + suffix(i);
+            ddl[i * 2 - 2] = "create table " + table + "(id bigint auto_increment primary key, level int, message varchar(64))";
+            ddl[i * 2 - 1] = "insert into " + table + "(level, message) select mod(x, 5), concat('message ', x) from system_range(1, "
+                    + ROWS_PER_SHARD + ") t(x)";
+        }
+        db = BenchDatabase.create("seq", ddl);
+        BenchLog.latest = suffix(shards);
+        ArConfig config = db.newConfig();
+        config.regTable("bench_log_", BenchLog.class);
+        if (parallelism > 0) {
+            executor = Executors.newFixedThreadPool(parallelism);
+            config.setSeqExecutor(executor, parallelism, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+        db.shutdown();
+    }
+
+
+    @Benchmark
+    public List<BenchLog> findInSeq() {
+        return new BenchLog().findByLevel(1);
+    }
+
+
+    private static String suffix(int i) {
+        return String.format("%08d", i);
+    }
+}
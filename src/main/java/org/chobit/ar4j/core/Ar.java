@@ -5,42 +5,73 @@ import org.chobit.ar4j.core.dialect.Dialect;
 import org.chobit.ar4j.core.exception.ArConfigException;
 import org.chobit.ar4j.core.exception.DataSourceNotFoundException;
 import org.chobit.ar4j.core.exception.ModelUnRegisterException;
-import org.chobit.ar4j.core.exception.TableNotFoundException;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 另一个配置类。用于维护Model类和ArConfig的逆向关系。主要提供通过model类获取表和数据源等信息的功能。
+ * <p>
+ * 每个Model类的元数据以不可变的ModelMeta快照的形式保存在ClassValue中，注册时整体替换，读取时无需加锁。
  */
 class Ar {
 
-    private final static Map<Class<? extends Model>, ArConfig> model2Config = new HashMap<Class<? extends Model>, ArConfig>();
+    private static final ClassValue<MetaRef> metas = new ClassValue<MetaRef>() {
+        @Override
+        protected MetaRef computeValue(Class<?> type) {
+            return new MetaRef();
+        }
+    };
 
-    static void regModel2Config(final Class<? extends Model> modelClass, final ArConfig config) {
+    static void regModel(final Class<? extends Model> modelClass, final ArConfig config, final Table table) {
         if (null == modelClass) {
             throw new IllegalArgumentException("modelClass cannot be null!");
         }
         if (null == config) {
             throw new IllegalArgumentException("config cannot be null!");
         }
-        model2Config.put(modelClass, config);
+        if (null == table) {
+            throw new IllegalArgumentException("table cannot be null!");
+        }
+        metas.get(modelClass).meta = new ModelMeta(modelClass, config, table);
     }
 
 
-    private static ArConfig getConfig(Class<? extends Model> modelClass) {
-        return model2Config.get(modelClass);
+    /**
+     * 获取Model类的元数据，Model类未注册时返回null
+     */
+    static ModelMeta findMeta(Class<? extends Model> modelClass) {
+        return metas.get(modelClass).meta;
     }
 
 
-    static Connection getConnection(Class<? extends Model> modelClass) {
-        ArConfig config = getConfig(modelClass);
-        if (null == config) {
+    static ModelMeta getMeta(Class<? extends Model> modelClass) {
+        ModelMeta meta = metas.get(modelClass).meta;
+        if (null == meta) {
             throw new ModelUnRegisterException(modelClass);
         }
+        return meta;
+    }
+
+
+    static ArConfig requireConfig(Class<? extends Model> modelClass) {
+        return getMeta(modelClass).getConfig();
+    }
+
+
+    static Connection getConnection(Class<? extends Model> modelClass) {
+        return getConnection(getMeta(modelClass));
+    }
+
+
+    static Connection getConnection(ModelMeta meta) {
+        ArConfig config = meta.getConfig();
+        ensureColumns(meta);
+        Transaction tx = Transaction.current(config);
+        if (null != tx) {
+            return tx.getConnection();
+        }
         DataSource dataSource = config.getDataSource();
         if (null != dataSource) {
             try {
@@ -49,17 +80,43 @@ class Ar {
                 throw new ArConfigException(e);
             }
         } else {
-            throw new DataSourceNotFoundException(modelClass);
+            throw new DataSourceNotFoundException(meta.getModelClass());
         }
     }
 
 
-    static Dialect getDialect(Class<? extends Model> modelClass) {
-        ArConfig config = getConfig(modelClass);
-        if (null == config) {
-            throw new ModelUnRegisterException(modelClass);
+    /**
+     * 获取查询使用的连接，ArConfig配置了副本时从副本获取，副本都不可用时使用主库
+     */
+    static Connection getReadConnection(ModelMeta meta) {
+        ReplicaSet replicas = meta.getConfig().getReadReplicas();
+        if (null != replicas) {
+            ensureColumns(meta);
+            Connection conn = replicas.getConnection();
+            if (null != conn) {
+                return conn;
+            }
+        }
+        return getConnection(meta);
+    }
+
+
+    /**
+     * 查询出错时调用，用于统计副本的失败次数
+     */
+    static void readFailed(ModelMeta meta, Connection conn, Throwable error) {
+        if (null == meta || null == conn) {
+            return;
         }
-        Dialect dialect = config.getDialect();
+        ReplicaSet replicas = meta.getConfig().getReadReplicas();
+        if (null != replicas) {
+            replicas.reportFailure(conn, error);
+        }
+    }
+
+
+    static Dialect getDialect(Class<? extends Model> modelClass) {
+        Dialect dialect = getMeta(modelClass).getDialect();
         if (null != dialect) {
             return dialect;
         } else {
@@ -67,60 +124,56 @@ class Ar {
         }
     }
 
+    static Table getTable(Class<? extends Model> modelClass) {
+        return getMeta(modelClass).getTable();
+    }
+
+    /**
+     * 获取Model类对应表的列布局，Model类未注册时返回null
+     */
+    static Props.Layout findLayout(Class<? extends Model> modelClass) {
+        ModelMeta meta = findMeta(modelClass);
+        return null == meta ? null : meta.getTable().getLayout();
+    }
+
     static String getTableFlag(Class<? extends Model> modelClass) {
-        ArConfig config = getConfig(modelClass);
-        if (null == config) {
-            throw new ModelUnRegisterException(modelClass);
-        }
-        Table table = config.getTable(modelClass);
-        if (null != table) {
-            return table.getTableFlag();
-        } else {
-            throw new TableNotFoundException(modelClass);
-        }
+        return getTable(modelClass).getTableFlag();
     }
 
 
     static String getPrimaryKey(Class<? extends Model> modelClass) {
-        ArConfig config = getConfig(modelClass);
-        if (null == config) {
-            throw new ModelUnRegisterException(modelClass);
-        }
-        Table table = config.getTable(modelClass);
-        if (null != table) {
-            return table.getPrimaryKey();
-        } else {
-            throw new TableNotFoundException(modelClass);
-        }
+        return getTable(modelClass).getPrimaryKey();
     }
 
     static Class getPrimaryKeyClass(Class<? extends Model> modelClass) {
-        ArConfig config = getConfig(modelClass);
-        if (null == config) {
-            throw new ModelUnRegisterException(modelClass);
-        }
-        Table table = config.getTable(modelClass);
-        if (null != table) {
-            return table.getPrimaryKeyClass();
-        } else {
-            throw new TableNotFoundException(modelClass);
-        }
+        return ensureColumns(getMeta(modelClass)).getPrimaryKeyClass();
     }
 
 
     static Class getColumnClass(Class<? extends Model> modelClass, String columnName) {
-        ArConfig config = getConfig(modelClass);
-        if (null == config) {
-            throw new ModelUnRegisterException(modelClass);
-        }
-        Table table = config.getTable(modelClass);
-        if (null == table) {
-            throw new TableNotFoundException(modelClass);
-        }
+        Table table = ensureColumns(getMeta(modelClass));
         Class clazz = table.getColumnClass(columnName);
         if (null == clazz) {
             throw new ArConfigException("column not found");
         }
         return table.getPrimaryKeyClass();
     }
+
+
+    /**
+     * 注册时推迟加载或使用快照的表，在首次访问数据库前补齐列信息
+     */
+    private static Table ensureColumns(ModelMeta meta) {
+        Table table = meta.getTable();
+        if (Table.COLUMNS_LOADED != table.getColumnsState()) {
+            meta.getConfig().ensureColumns(table);
+        }
+        return table;
+    }
+
+
+    private static final class MetaRef {
+
+        private volatile ModelMeta meta;
+    }
 }
@@ -2,14 +2,37 @@ package org.chobit.ar4j.core;
 
 
 import org.chobit.ar4j.core.datasource.DataSourcePlugin;
+import org.chobit.ar4j.core.datasource.Replica;
+import org.chobit.ar4j.core.datasource.ReplicaBalancer;
 import org.chobit.ar4j.core.dialect.Dialect;
+import org.chobit.ar4j.core.dialect.MultiRowInsertDialect;
 import org.chobit.ar4j.core.exception.ArConfigException;
+import org.chobit.ar4j.core.exception.ArException;
+import org.chobit.ar4j.core.metrics.Instrumentation;
 
 import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static org.chobit.ar4j.core.tools.Strings.isBlank;
 
@@ -18,15 +41,69 @@ import static org.chobit.ar4j.core.tools.Strings.isBlank;
  */
 public class ArConfig {
 
+    private static final Logger LOGGER = Logger.getLogger(ArConfig.class.getName());
+
+    private static final long MIN_VALIDATE_BACKOFF_MILLIS = 1000;
+
+    private static final long MAX_VALIDATE_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
     private String id;
 
     private DataSourcePlugin dsp;
 
     private Dialect dialect;
 
-    private Map<Class<? extends Model>, Table> tables = new HashMap<Class<? extends Model>, Table>();
+    private final ConcurrentMap<Class<? extends Model>, Table> tables = new ConcurrentHashMap<Class<? extends Model>, Table>();
+
+    private int batchSize = 1000;
+
+    private boolean multiRowInsert = false;
+
+    private int fetchSize = 0;
+
+    private ExecutorService seqExecutor;
+
+    private int seqParallelism;
+
+    private long seqTimeoutNanos;
+
+    private boolean seqParallelWrites = false;
+
+    private long seqTablesTtlNanos = TimeUnit.MINUTES.toNanos(5);
+
+    private final ConcurrentMap<Class<? extends SeqModel>, SeqTables> seqTables = new ConcurrentHashMap<Class<? extends SeqModel>, SeqTables>();
+
+    private volatile boolean deferColumnLoading = false;
+
+    private volatile Map<String, Map<String, Class>> schemaSnapshot = Collections.emptyMap();
+
+    private final AtomicBoolean validating = new AtomicBoolean(false);
+
+    /**
+     * 后台核对快照失败后，在此时间(System.nanoTime())之前不再重试
+     */
+    private volatile long validateAfter = System.nanoTime();
+
+    private long validateBackoffMillis;
+
+    private volatile Instrumentation instrumentation;
+
+    private volatile AsyncExecutor asyncExecutor;
+
+    private int asyncConcurrency = 0;
+
+    private final ReplicaSet replicas;
+
+    private final ThreadLocal<Boolean> primaryReads = new ThreadLocal<Boolean>();
 
     public ArConfig(String id, DataSourcePlugin dsp, Dialect dialect) {
+        this(id, dsp, Collections.<DataSourcePlugin>emptyList(), dialect);
+    }
+
+    /**
+     * 创建读写分离的ArConfig，写操作及事务中的操作使用主库dsp，查询在replicas中按ReplicaBalancer选择副本执行
+     */
+    public ArConfig(String id, DataSourcePlugin dsp, List<DataSourcePlugin> replicas, Dialect dialect) {
         if (isBlank(id)) {
             throw new IllegalArgumentException("id cannot be null");
         }
@@ -36,9 +113,13 @@ public class ArConfig {
         if (null == dialect) {
             throw new IllegalArgumentException("dialect cannot be null");
         }
+        if (null == replicas) {
+            throw new IllegalArgumentException("replicas cannot be null");
+        }
         this.id = id;
         this.dsp = dsp;
         this.dialect = dialect;
+        this.replicas = replicas.isEmpty() ? null : new ReplicaSet(replicas);
     }
 
     DataSource getDataSource() {
@@ -49,10 +130,437 @@ public class ArConfig {
         return this.dialect;
     }
 
+    /**
+     * 当前线程中的查询使用的副本，没有副本、调用了onPrimary()或处于事务中时返回null
+     */
+    ReplicaSet getReadReplicas() {
+        if (null == this.replicas || Boolean.TRUE == primaryReads.get() || null != Transaction.current(this)) {
+            return null;
+        }
+        return this.replicas;
+    }
+
+    /**
+     * 副本的状态，没有副本时返回空列表
+     */
+    public List<? extends Replica> getReplicas() {
+        return null == this.replicas ? Collections.<Replica>emptyList() : this.replicas.getReplicas();
+    }
+
+    /**
+     * 设置选择副本的方式，默认为RoundRobinBalancer
+     */
+    public void setReplicaBalancer(ReplicaBalancer balancer) {
+        if (null == balancer) {
+            throw new IllegalArgumentException("balancer cannot be null");
+        }
+        if (null != this.replicas) {
+            this.replicas.setBalancer(balancer);
+        }
+    }
+
+    /**
+     * 设置副本连续失败failureThreshold次后被移出的时长，默认连续失败3次后移出30秒
+     */
+    public void setReplicaEjection(int failureThreshold, long duration, TimeUnit unit) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        if (null != this.replicas) {
+            this.replicas.setEjection(failureThreshold, unit.toNanos(duration));
+        }
+    }
+
+    /**
+     * 在主库上执行work中的查询，用于需要读到刚写入数据的场景。work中提交的异步操作同样使用主库
+     */
+    public <T> T onPrimary(Callable<T> work) {
+        Boolean previous = primaryReads.get();
+        primaryReads.set(Boolean.TRUE);
+        try {
+            return work.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ArException("execute on primary error.", e);
+        } finally {
+            if (null == previous) {
+                primaryReads.remove();
+            } else {
+                primaryReads.set(previous);
+            }
+        }
+    }
+
     Table getTable(Class<? extends Model> modelCalss) {
         return this.tables.get(modelCalss);
     }
 
+    int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * 设置批量写入时每批的记录数，默认为1000
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    boolean isMultiRowInsert() {
+        return this.multiRowInsert && this.dialect instanceof MultiRowInsertDialect;
+    }
+
+    /**
+     * 设置批量写入时是否将每批记录改写为一条多行insert语句，需要Dialect实现MultiRowInsertDialect接口
+     */
+    public void setMultiRowInsert(boolean multiRowInsert) {
+        this.multiRowInsert = multiRowInsert;
+    }
+
+    int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    /**
+     * 设置流式查询时每次从数据库读取的记录数，为0时使用驱动的默认值。
+     * MySQL驱动需要设置为Integer.MIN_VALUE才会逐行读取。
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    ExecutorService getSeqExecutor() {
+        return this.seqExecutor;
+    }
+
+    int getSeqParallelism() {
+        return this.seqParallelism;
+    }
+
+    long getSeqTimeoutNanos() {
+        return this.seqTimeoutNanos;
+    }
+
+    /**
+     * 开启分表并行查询。
+     *
+     * @param executor    执行分表查询的线程池，建议使用有界线程池，线程数不超过连接池大小
+     * @param parallelism 单次查询同时执行的分表查询数量上限
+     * @param timeout     单次查询的时限，不大于0时不限制
+     * @param unit        时限的单位
+     */
+    public void setSeqExecutor(ExecutorService executor, int parallelism, long timeout, TimeUnit unit) {
+        if (null == executor) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.seqExecutor = executor;
+        this.seqParallelism = parallelism;
+        this.seqTimeoutNanos = timeout > 0 ? unit.toNanos(timeout) : 0;
+    }
+
+    boolean isSeqParallelWrites() {
+        return this.seqParallelWrites && null != this.seqExecutor;
+    }
+
+    /**
+     * 设置SeqModel的batchSave写入多个分表时是否在分表并行查询的线程池中并行写入，需要先调用setSeqExecutor()。
+     * 并行写入时各分表使用各自的连接，当前线程中有事务时仍按顺序写入
+     */
+    public void setSeqParallelWrites(boolean seqParallelWrites) {
+        this.seqParallelWrites = seqParallelWrites;
+    }
+
+    /**
+     * 设置分表目录的有效期，默认为5分钟，不大于0时只在出现新的最新后缀或手动刷新时重新加载
+     */
+    public void setSeqTablesTtl(long ttl, TimeUnit unit) {
+        this.seqTablesTtlNanos = ttl > 0 ? unit.toNanos(ttl) : 0;
+    }
+
+    /**
+     * 清除SeqModel类的分表目录，下次分表查询时重新加载
+     */
+    public void refreshSeqTables(Class<? extends SeqModel> modelClass) {
+        this.seqTables.remove(modelClass);
+    }
+
+    Instrumentation getInstrumentation() {
+        return this.instrumentation;
+    }
+
+    /**
+     * 注册Model操作的监控实现，如JmxMetrics。为null时不做任何统计
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * 设置执行异步操作的线程池及同时执行的异步操作数量上限，达到上限时提交异步操作的线程会阻塞等待。
+     * 上限建议不超过连接池的大小。
+     */
+    public synchronized void setAsyncExecutor(Executor executor, int concurrency) {
+        if (null == executor) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        this.asyncExecutor = new AsyncExecutor(executor, concurrency);
+    }
+
+    /**
+     * 设置默认异步执行器同时执行的异步操作数量上限，默认与连接池的最大连接数一致，
+     * 无法获取连接池大小时为10。需要在首次执行异步操作前设置。
+     */
+    public synchronized void setAsyncConcurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        this.asyncConcurrency = concurrency;
+    }
+
+    /**
+     * 当前线程处于onPrimary()中时，使task在其他线程中执行时同样从主库读取
+     */
+    <T> Callable<T> inheritPrimaryReads(final Callable<T> task) {
+        if (null == this.replicas || Boolean.TRUE != primaryReads.get()) {
+            return task;
+        }
+        return new Callable<T>() {
+            @Override
+            public T call() {
+                return onPrimary(task);
+            }
+        };
+    }
+
+    /**
+     * 异步执行task。当前线程中有本ArConfig的事务时，task在当前线程中执行以使用事务的连接
+     */
+    <T> CompletableFuture<T> async(final Callable<T> task) {
+        if (null != Transaction.current(this)) {
+            return AsyncExecutor.runHere(task);
+        }
+        Callable<T> work = inheritPrimaryReads(task);
+        AsyncExecutor executor = this.asyncExecutor;
+        if (null == executor) {
+            synchronized (this) {
+                executor = this.asyncExecutor;
+                if (null == executor) {
+                    int concurrency = this.asyncConcurrency > 0 ? this.asyncConcurrency : AsyncExecutor.poolSizeOf(getDataSource());
+                    executor = AsyncExecutor.create(this.id, concurrency);
+                    this.asyncExecutor = executor;
+                }
+            }
+        }
+        return executor.submit(work);
+    }
+
+    /**
+     * 开启事务，事务范围内当前线程中注册到本ArConfig的Model操作共用一个连接
+     */
+    public Transaction beginTransaction() {
+        return Transaction.begin(this);
+    }
+
+    /**
+     * 在事务中执行work，正常返回时提交，抛出异常时回滚
+     */
+    public <T> T transaction(Callable<T> work) {
+        Transaction tx = beginTransaction();
+        try {
+            T result = work.call();
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ArException("execute transaction error.", e);
+        } finally {
+            tx.close();
+        }
+    }
+
+    /**
+     * 设置注册表时是否推迟加载列信息。开启后regTable不再访问数据库，
+     * 可随后调用loadColumns()批量加载，未加载的表会在首次使用时单独加载。
+     */
+    public void setDeferColumnLoading(boolean deferColumnLoading) {
+        this.deferColumnLoading = deferColumnLoading;
+    }
+
+    /**
+     * 读取列信息快照文件。之后注册的表直接使用快照中的列信息，不访问数据库，
+     * 首次使用时在后台批量加载一次列信息进行核对。
+     */
+    public void loadSchema(File file) {
+        Map<String, Map<String, Class>> schema;
+        try {
+            schema = SchemaLoader.read(file);
+        } catch (Exception e) {
+            throw new ArConfigException("load schema snapshot error.", e);
+        }
+        this.schemaSnapshot = schema;
+        for (Table table : this.tables.values()) {
+            Map<String, Class> columns = schema.get(table.getTableFlag());
+            if (null != columns && Table.COLUMNS_EMPTY == table.getColumnsState()) {
+                table.setColumnClasses(columns, Table.COLUMNS_SNAPSHOT);
+            }
+        }
+    }
+
+    /**
+     * 将已注册表的列信息写入快照文件，尚未加载的表会先批量加载
+     */
+    public void saveSchema(File file) {
+        loadColumns();
+        Map<String, Map<String, Class>> schema = new HashMap<String, Map<String, Class>>();
+        for (Table table : this.tables.values()) {
+            schema.put(table.getTableFlag(), table.getColumnClasses());
+        }
+        try {
+            SchemaLoader.save(file, schema);
+        } catch (IOException e) {
+            throw new ArConfigException("save schema snapshot error.", e);
+        }
+    }
+
+    /**
+     * 通过一次元数据查询加载全部尚未从数据库加载列信息的表，元数据中找不到的表逐个查询
+     */
+    public void loadColumns() {
+        Map<String, Table> pending = new HashMap<String, Table>();
+        for (Table table : this.tables.values()) {
+            if (Table.COLUMNS_LOADED != table.getColumnsState()) {
+                pending.put(getTableName(table).toLowerCase(), table);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Table, Map<String, Class>> loaded;
+        try {
+            loaded = SchemaLoader.load(getDataSource(), pending);
+        } catch (SQLException e) {
+            throw new ArConfigException(e);
+        }
+        for (Table table : pending.values()) {
+            Map<String, Class> columns = loaded.get(table);
+            synchronized (table) {
+                if (null != columns) {
+                    table.setColumnClasses(columns, Table.COLUMNS_LOADED);
+                } else {
+                    obtainTableColumns(table);
+                }
+            }
+        }
+    }
+
+    /**
+     * 并行加载多个ArConfig中的列信息，每个ArConfig各执行一次元数据查询
+     */
+    public static void loadColumns(ArConfig... configs) {
+        if (configs.length <= 1) {
+            for (ArConfig config : configs) {
+                config.loadColumns();
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(configs.length);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(configs.length);
+            for (final ArConfig config : configs) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        config.loadColumns();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ArConfigException("load columns interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ArConfigException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 表的列信息不是从数据库加载时调用：未加载的表立即加载，来自快照的表在后台批量核对一次。
+     * 核对失败时继续使用快照中的列信息，按指数退避(1秒至5分钟)延后下次核对
+     */
+    void ensureColumns(Table table) {
+        if (Table.COLUMNS_EMPTY == table.getColumnsState()) {
+            synchronized (table) {
+                if (Table.COLUMNS_EMPTY == table.getColumnsState()) {
+                    obtainTableColumns(table);
+                }
+            }
+        } else if (Table.COLUMNS_SNAPSHOT == table.getColumnsState() && System.nanoTime() - this.validateAfter >= 0
+                && this.validating.compareAndSet(false, true)) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        loadColumns();
+                        validateBackoffMillis = 0;
+                    } catch (RuntimeException e) {
+                        validateBackoffMillis = 0 == validateBackoffMillis ? MIN_VALIDATE_BACKOFF_MILLIS
+                                : Math.min(validateBackoffMillis * 2, MAX_VALIDATE_BACKOFF_MILLIS);
+                        validateAfter = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(validateBackoffMillis);
+                        LOGGER.log(Level.WARNING, "validate schema snapshot of " + id + " error, retry in "
+                                + validateBackoffMillis + "ms.", e);
+                    } finally {
+                        validating.set(false);
+                    }
+                }
+            }, "ar4j-schema-" + this.id);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * 获取SeqModel对应的全部分表名，按从新到旧排序
+     */
+    List<String> getSeqTables(SeqModel<?> model) throws SQLException {
+        Class<? extends SeqModel> modelClass = model.getClass();
+        String suffixRegex = model.suffixRegex();
+        String latestSuffix = model.latestSuffix();
+        SeqTables st = this.seqTables.get(modelClass);
+        if (null == st || !st.getSuffixRegex().equals(suffixRegex)) {
+            st = new SeqTables(getTable(modelClass).getTableFlag(), suffixRegex);
+            this.seqTables.put(modelClass, st);
+        }
+        if (st.isStale(this.seqTablesTtlNanos, latestSuffix)) {
+            synchronized (st) {
+                if (st.isStale(this.seqTablesTtlNanos, latestSuffix)) {
+                    List<String> tables = ArHelper.findTableNames(modelClass, this.dialect.sqlShowTables(), st.getPattern());
+                    st.update(Collections.unmodifiableList(tables), latestSuffix);
+                }
+            }
+        }
+        return st.getTables();
+    }
+
     public void regTable(Class<? extends Model> modelCalss) {
         String tableFlag = classToTableFlag(modelCalss);
         regTable(modelCalss, new Table(modelCalss, tableFlag, this.dialect.defaultPrimaryKey()));
@@ -75,9 +583,18 @@ public class ArConfig {
         if (Modifier.isAbstract(modelCalss.getModifiers())) {
             throw new ArConfigException("Model class cannot be abstract.");
         }
-        Ar.regModel2Config(modelCalss, this);
         this.tables.put(modelCalss, table);
-        obtainTableColumns(table);
+        Map<String, Class> snapshot = this.schemaSnapshot.get(table.getTableFlag());
+        if (null != snapshot) {
+            table.setColumnClasses(snapshot, Table.COLUMNS_SNAPSHOT);
+            Ar.regModel(modelCalss, this, table);
+        } else if (this.deferColumnLoading) {
+            Ar.regModel(modelCalss, this, table);
+        } else {
+            // 先加载列信息再发布，避免其他线程读到列信息为空的表
+            obtainTableColumns(table);
+            Ar.regModel(modelCalss, this, table);
+        }
     }
 
 
@@ -91,11 +608,13 @@ public class ArConfig {
             ps = conn.prepareStatement(sql);
             rs = ps.executeQuery();
             ResultSetMetaData meta = rs.getMetaData();
+            Map<String, Class> columnClasses = new HashMap<String, Class>();
             for (int i = 1; i <= meta.getColumnCount(); i++) {
                 String columnName = meta.getColumnName(i);
                 String columnClassName = meta.getColumnClassName(i);
-                table.addColumnClass(columnName, Class.forName(columnClassName));
+                columnClasses.put(columnName, Class.forName(columnClassName));
             }
+            table.setColumnClasses(columnClasses, Table.COLUMNS_LOADED);
         } catch (Exception e) {
             throw new ArConfigException(e);
         } finally {
@@ -1,10 +1,17 @@
 package org.chobit.ar4j.core;
 
 
+import org.chobit.ar4j.core.dialect.Dialect;
+import org.chobit.ar4j.core.dialect.PagingDialect;
+import org.chobit.ar4j.core.dialect.UpsertDialect;
 import org.chobit.ar4j.core.exception.ArException;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 /**
@@ -12,6 +19,11 @@ import java.util.regex.Pattern;
  */
 class ArHelper {
 
+    /**
+     * Dialect未实现PagingDialect时分页查询默认的每页记录数
+     */
+    static final int DEFAULT_PAGE_SIZE = 20;
+
 
     static String buildInClause(Class<? extends Model> modelClass, String columnName, Collection<Object> values) {
         Class clazz = Ar.getColumnClass(modelClass, columnName);
@@ -34,62 +46,269 @@ class ArHelper {
     }
 
 
-    static String buildGet(Class<? extends Model> modelClass, String tableName) {
-        String primaryKey = Ar.getPrimaryKey(modelClass);
-        StringBuilder sql = new StringBuilder("select * from ");
-        sql.append(tableName).append(" where ").append(primaryKey).append(" = ?");
-        return sql.toString();
+    static String buildGet(Table table, String tableName) {
+        SqlKey key = new SqlKey(SqlKey.Type.GET, tableName, null);
+        String sql = table.getSqlTemplate(key);
+        if (null == sql) {
+            StringBuilder tmp = new StringBuilder("select * from ");
+            tmp.append(tableName).append(" where ").append(table.getPrimaryKey()).append(" = ?");
+            sql = table.putSqlTemplate(key, tmp.toString());
+        }
+        return sql;
+    }
+
+
+    /**
+     * 构建按主键批量查询的语句，in子句中包含size个占位符
+     */
+    static String buildGetIn(Table table, String tableName, int size) {
+        SqlKey key = new SqlKey(SqlKey.Type.GET_IN, tableName, null, size);
+        String sql = table.getSqlTemplate(key);
+        if (null == sql) {
+            StringBuilder tmp = new StringBuilder("select * from ");
+            tmp.append(tableName).append(" where ").append(table.getPrimaryKey()).append(" in (");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    tmp.append(", ");
+                }
+                tmp.append("?");
+            }
+            tmp.append(")");
+            sql = table.putSqlTemplate(key, tmp.toString());
+        }
+        return sql;
+    }
+
+
+    /**
+     * 分页查询的排序列，排序列不是主键时追加主键，保证排序列的值重复时顺序仍然确定
+     */
+    static String[] pageKeys(Table table, String column) {
+        String primaryKey = table.getPrimaryKey();
+        if (null == column || column.equalsIgnoreCase(primaryKey)) {
+            return new String[]{primaryKey};
+        }
+        return new String[]{column, primaryKey};
+    }
+
+
+    static int pageSize(Dialect dialect, int pageSize) {
+        if (pageSize > 0) {
+            return pageSize;
+        }
+        return dialect instanceof PagingDialect ? ((PagingDialect) dialect).defaultPageSize() : DEFAULT_PAGE_SIZE;
+    }
+
+
+    /**
+     * 构建分页查询语句：select * from t where (sqlWhere) and keys > ? order by keys limit ?。
+     * seek为false时查询第一页，没有keys上的条件
+     */
+    static String buildPage(Table table, String tableName, Dialect dialect, String[] keys, String sqlWhere, boolean seek) {
+        String[] columns = {keys[0], null == sqlWhere ? "" : sqlWhere, seek ? "1" : "0"};
+        SqlKey key = new SqlKey(SqlKey.Type.PAGE, tableName, columns);
+        String sql = table.getSqlTemplate(key);
+        if (null == sql) {
+            StringBuilder tmp = new StringBuilder("select * from ");
+            tmp.append(tableName);
+            if (null != sqlWhere || seek) {
+                tmp.append(" where ");
+            }
+            if (null != sqlWhere) {
+                tmp.append("(").append(sqlWhere).append(")");
+                if (seek) {
+                    tmp.append(" and ");
+                }
+            }
+            if (seek && 1 == keys.length) {
+                tmp.append(keys[0]).append(" > ?");
+            } else if (seek) {
+                tmp.append("(").append(keys[0]).append(" > ? or (").append(keys[0]).append(" = ? and ")
+                        .append(keys[1]).append(" > ?))");
+            }
+            tmp.append(" order by ").append(keys[0]);
+            if (keys.length > 1) {
+                tmp.append(", ").append(keys[1]);
+            }
+            sql = table.putSqlTemplate(key, limit(dialect, tmp.toString()));
+        }
+        return sql;
+    }
+
+
+    /**
+     * 为查询语句添加限制记录数的子句，记录数以占位符绑定
+     */
+    static String limit(Dialect dialect, String sql) {
+        return dialect instanceof PagingDialect ? ((PagingDialect) dialect).sqlLimit(sql) : sql + " limit ?";
+    }
+
+
+    /**
+     * 按buildPage()中占位符的顺序排列参数
+     */
+    static Object[] pageParams(Object[] after, int limit, Object... params) {
+        List<Object> all = new ArrayList<Object>(params.length + 4);
+        all.addAll(Arrays.asList(params));
+        if (null != after && 1 == after.length) {
+            all.add(after[0]);
+        } else if (null != after) {
+            all.add(after[0]);
+            all.add(after[0]);
+            all.add(after[1]);
+        }
+        all.add(limit);
+        return all.toArray();
+    }
+
+
+    /**
+     * 统一整数类型的主键值，long范围内的整数统一为Long，避免Integer、Long、BigInteger(如bigint unsigned)的主键无法匹配
+     */
+    static Object normalizeKey(Object key) {
+        if (key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte
+                || key instanceof AtomicInteger || key instanceof AtomicLong) {
+            return ((Number) key).longValue();
+        }
+        if (key instanceof BigInteger && ((BigInteger) key).bitLength() < 64) {
+            return ((BigInteger) key).longValue();
+        }
+        if (key instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) key;
+            if (d.signum() == 0) {
+                return 0L;
+            }
+            d = d.stripTrailingZeros();
+            if (d.scale() <= 0) {
+                return normalizeKey(d.toBigIntegerExact());
+            }
+            return d;
+        }
+        return key;
+    }
+
+
+    static String buildBatchInsert(Table table, String tableName, Props attrs) {
+        return buildBatchInsert(table, tableName, attrs.keyArray());
+    }
+
+
+    static String buildBatchInsert(Table table, String tableName, String[] columns) {
+        SqlKey key = new SqlKey(SqlKey.Type.INSERT, tableName, columns);
+        String sql = table.getSqlTemplate(key);
+        if (null == sql) {
+            StringBuilder tmp = new StringBuilder("insert into ");
+            tmp.append(tableName).append(" (");
+            StringBuilder values = new StringBuilder(") values (");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    tmp.append(", ");
+                    values.append(", ");
+                }
+                tmp.append(columns[i]);
+                values.append("?");
+            }
+            tmp.append(values).append(")");
+            sql = table.putSqlTemplate(key, tmp.toString());
+        }
+        return sql;
+    }
+
+
+    /**
+     * 构建多行insert语句，rows为语句中values的行数
+     */
+    static String buildMultiRowInsert(Table table, String tableName, String[] columns, int rows) {
+        SqlKey key = new SqlKey(SqlKey.Type.MULTI_INSERT, tableName, columns, rows);
+        String sql = table.getSqlTemplate(key);
+        if (null == sql) {
+            StringBuilder tmp = new StringBuilder("insert into ");
+            tmp.append(tableName).append(" (");
+            StringBuilder row = new StringBuilder("(");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    tmp.append(", ");
+                    row.append(", ");
+                }
+                tmp.append(columns[i]);
+                row.append("?");
+            }
+            row.append(")");
+            tmp.append(") values ");
+            for (int i = 0; i < rows; i++) {
+                if (i > 0) {
+                    tmp.append(", ");
+                }
+                tmp.append(row);
+            }
+            sql = table.putSqlTemplate(key, tmp.toString());
+        }
+        return sql;
     }
 
 
-    static void buildBatchInsert(String tableName, Map<String, Object> attrs, StringBuilder sql) {
-        sql.append("insert into ");
-        sql.append(tableName).append(" (");
-        StringBuilder tmp = new StringBuilder(") values (");
-        int i = 0;
-        for (String key : attrs.keySet()) {
-            if (i++ > 0) {
-                sql.append(", ");
-                tmp.append(", ");
+    /**
+     * upsert以主键判断记录是否存在，columns中需要包含主键列，列名不区分大小写
+     */
+    static void checkUpsertColumns(Table table, String[] columns) {
+        String pk = table.getPrimaryKey();
+        for (String column : columns) {
+            if (column.equalsIgnoreCase(pk)) {
+                return;
             }
-            sql.append(key);
-            tmp.append("?");
         }
-        sql.append(tmp).append(")");
+        throw new ArException("primary key " + pk + " of table " + table.getTableFlag() + " is required by upsert.");
     }
 
 
-    static Object[] genBatchParams(Map<String, Object> props) {
-        List<Object> params = new ArrayList<Object>();
-        for (String key : props.keySet()) {
-            params.add(props.get(key));
+    /**
+     * 构建upsert语句，以主键判断记录是否已存在，参数按columns的顺序绑定
+     */
+    static String buildUpsert(Table table, String tableName, UpsertDialect dialect, String[] columns) {
+        SqlKey key = new SqlKey(SqlKey.Type.UPSERT, tableName, columns);
+        String sql = table.getSqlTemplate(key);
+        if (null == sql) {
+            sql = table.putSqlTemplate(key, dialect.sqlUpsert(tableName, columns, new String[]{table.getPrimaryKey()}));
         }
-        return params.toArray();
+        return sql;
     }
 
 
-    static void buildInsert(String tableName, Map<String, Object> attrs, StringBuilder sql, List<Object> params) throws SQLException {
-        sql.append("insert into ");
-        sql.append(tableName).append(" (");
-        StringBuilder tmp = new StringBuilder(") values (");
-        for (String key : attrs.keySet()) {
-            if (params.size() > 0) {
-                sql.append(", ");
-                tmp.append(", ");
+    /**
+     * 按属性的组合对Model分组，保持原有顺序
+     */
+    static <M extends Model> Collection<List<M>> groupByShape(Collection<M> models) {
+        Map<List<String>, List<M>> groups = new LinkedHashMap<List<String>, List<M>>();
+        for (M m : models) {
+            List<String> shape = Arrays.asList(m.getProps().keyArray());
+            List<M> group = groups.get(shape);
+            if (null == group) {
+                group = new ArrayList<M>();
+                groups.put(shape, group);
             }
-            sql.append(key);
-            tmp.append("?");
-            params.add(attrs.get(key));
+            group.add(m);
         }
-        sql.append(tmp).append(")");
+        return groups.values();
     }
 
 
-    static boolean executeInsert(Class<? extends Model> modelClass, Map<String, Object> attrs, PreparedStatement ps) throws SQLException {
+    static Object[] genBatchParams(Props props) {
+        return props.valueArray();
+    }
+
+
+    static String buildInsert(Table table, String tableName, Props attrs, List<Object> params) {
+        String sql = buildBatchInsert(table, tableName, attrs);
+        params.addAll(Arrays.asList(attrs.valueArray()));
+        return sql;
+    }
+
+
+    static boolean executeInsert(Table table, Map<String, Object> attrs, PreparedStatement ps) throws SQLException {
         ResultSet rs = null;
         try {
-            String primaryKey = Ar.getPrimaryKey(modelClass);
-            Class primaryKeyClass = Ar.getPrimaryKeyClass(modelClass);
+            String primaryKey = table.getPrimaryKey();
+            Class primaryKeyClass = table.getPrimaryKeyClass();
             int result = ps.executeUpdate();
             rs = ps.getGeneratedKeys();
             Object generatedPrimaryKey;
@@ -112,29 +331,49 @@ class ArHelper {
     }
 
 
-    static void buildUpdate(String tableName, Map<String, Object> attrs, StringBuilder sql, List<Object> params, String primaryKey) throws SQLException {
-        sql.append("update ");
-        sql.append(tableName).append(" set ");
-        for (String key : attrs.keySet()) {
-            if (params.size() > 0) {
-                sql.append(", ");
+    /**
+     * 构建update语句，只更新修改过的列，不包括主键。没有需要更新的列时返回null
+     */
+    static String buildUpdate(Table table, String tableName, Props attrs, List<Object> params) {
+        String primaryKey = table.getPrimaryKey();
+        String[] columns = attrs.dirtyKeyArray(primaryKey);
+        if (0 == columns.length) {
+            return null;
+        }
+        SqlKey key = new SqlKey(SqlKey.Type.UPDATE, tableName, columns);
+        String sql = table.getSqlTemplate(key);
+        if (null == sql) {
+            StringBuilder tmp = new StringBuilder("update ");
+            tmp.append(tableName).append(" set ");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    tmp.append(", ");
+                }
+                tmp.append(columns[i]).append("=?");
             }
-            sql.append(key).append("=?");
-            params.add(attrs.get(key));
+            tmp.append(" where ").append(primaryKey).append("=?");
+            sql = table.putSqlTemplate(key, tmp.toString());
+        }
+        for (String column : columns) {
+            params.add(attrs.get(column));
         }
-        sql.append(" where ").append(primaryKey).append("=?");
         params.add(attrs.get(primaryKey));
+        return sql;
     }
 
 
-    static String buildDeleteByPrimaryKey(Class<? extends Model> modelClass, String tableName) {
-        String primaryKey = Ar.getPrimaryKey(modelClass);
-        StringBuilder sql = new StringBuilder("delete from ");
-        sql.append(tableName)
-                .append(" where ")
-                .append(primaryKey)
-                .append("=? ");
-        return sql.toString();
+    static String buildDeleteByPrimaryKey(Table table, String tableName) {
+        SqlKey key = new SqlKey(SqlKey.Type.DELETE, tableName, null);
+        String sql = table.getSqlTemplate(key);
+        if (null == sql) {
+            StringBuilder tmp = new StringBuilder("delete from ");
+            tmp.append(tableName)
+                    .append(" where ")
+                    .append(table.getPrimaryKey())
+                    .append("=? ");
+            sql = table.putSqlTemplate(key, tmp.toString());
+        }
+        return sql;
     }
 
 
@@ -145,27 +384,40 @@ class ArHelper {
     }
 
 
-    static <M extends Model> List<M> obtainResult(Class<? extends Model> modelClass, ResultSet rs) throws SQLException, IllegalAccessException, InstantiationException {
+    static <M extends Model> List<M> obtainResult(Table table, ResultSet rs) throws SQLException, IllegalAccessException, InstantiationException {
         List<M> result = new ArrayList<M>();
-        ResultSetMetaData meta = rs.getMetaData();
-        int columnCount = meta.getColumnCount();
+        RowMapper mapper = RowMapper.of(table, rs.getMetaData());
         while (rs.next()) {
-            Model<?> tmp = modelClass.newInstance();
-            for (int i = 1; i <= columnCount; i++) {
-                String label = meta.getColumnLabel(i);
-                tmp.getProps().put(label, rs.getObject(label));
-            }
-            result.add((M) tmp);
+            M m = mapper.map(rs);
+            result.add(m);
         }
         return result;
     }
 
 
+    /**
+     * 创建PreparedStatement，连接属于当前线程的事务时复用事务中缓存的PreparedStatement
+     */
+    static PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+        PreparedStatement ps = Transaction.prepare(conn, sql, false);
+        return null == ps ? conn.prepareStatement(sql) : ps;
+    }
+
+
+    static PreparedStatement prepareInsertStatement(Connection conn, String sql) throws SQLException {
+        PreparedStatement ps = Transaction.prepare(conn, sql, true);
+        return null == ps ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : ps;
+    }
+
+
     static void closePreparedStatement(PreparedStatement ps) {
         if (null != ps) {
             try {
                 ResultSet rs = ps.getResultSet();
                 closeResultSet(rs);
+                if (Transaction.release(ps)) {
+                    return;
+                }
                 ps.close();
             } catch (SQLException e) {
                 throw new ArException("close PrepareStatement error.", e);
@@ -186,7 +438,7 @@ class ArHelper {
 
 
     static void closeConnection(Connection conn) {
-        if (null != conn) {
+        if (null != conn && !Transaction.isBound(conn)) {
             try {
                 conn.close();
             } catch (Exception e) {
@@ -214,7 +466,7 @@ class ArHelper {
     }
 
 
-    static Set<String> findTableNames(Class<? extends SeqModel> seqModelClass, String sql, String suffixRegex) throws SQLException {
+    static List<String> findTableNames(Class<? extends SeqModel> seqModelClass, String sql, Pattern pattern) throws SQLException {
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -228,19 +480,19 @@ class ArHelper {
             conn = Ar.getConnection(seqModelClass);
             String tablePrefix = Ar.getTableFlag(seqModelClass);
             sql = sql.replace("${TABLE_NAME}", tablePrefix);
-            String regex = tablePrefix + suffixRegex;
             ps = conn.prepareStatement(sql);
             rs = ps.executeQuery();
             while (rs.next()) {
                 String t = rs.getString(1);
-                if (Pattern.matches(regex, t)) {
+                if (pattern.matcher(t).matches()) {
                     tables.add(t);
                 }
             }
         } finally {
-            close(conn, ps, rs);
+            close(ps, rs);
+            closeConnection(conn);
         }
-        return tables;
+        return new ArrayList<String>(tables);
     }
 
 }
@@ -0,0 +1,147 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.exception.ArException;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 执行异步Model操作。同时执行的操作数量受信号量限制，达到上限时提交操作的线程会阻塞等待，
+ * 而不是把操作无限制地排队。
+ */
+final class AsyncExecutor {
+
+    /**
+     * 无法获取连接池大小时使用的并发上限
+     */
+    static final int DEFAULT_CONCURRENCY = 10;
+
+    private static final String[] POOL_SIZE_GETTERS = {
+            "getMaximumPoolSize", "getMaxTotal", "getMaxActive", "getMaxConnections", "getMaxPoolSize"};
+
+    private final Executor executor;
+
+    private final Semaphore permits;
+
+    AsyncExecutor(Executor executor, int concurrency) {
+        this.executor = executor;
+        this.permits = new Semaphore(concurrency);
+    }
+
+
+    /**
+     * 创建默认的执行器，JDK支持时每个操作使用一个虚拟线程，否则使用大小为concurrency的线程池
+     */
+    static AsyncExecutor create(String name, int concurrency) {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (null != virtual) {
+            return new AsyncExecutor(virtual, concurrency);
+        }
+        return new AsyncExecutor(Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("ar4j-async-" + name)), concurrency);
+    }
+
+
+    <T> CompletableFuture<T> submit(final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new ArException("submit async operation interrupted.", e));
+            return future;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.complete(task.call());
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+
+    /**
+     * 在当前线程中执行，用于需要使用当前线程事务的操作
+     */
+    static <T> CompletableFuture<T> runHere(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            future.complete(task.call());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+
+    /**
+     * 通过常见连接池的getter获取最大连接数，获取不到时返回DEFAULT_CONCURRENCY
+     */
+    static int poolSizeOf(DataSource dataSource) {
+        if (null == dataSource) {
+            return DEFAULT_CONCURRENCY;
+        }
+        for (String getter : POOL_SIZE_GETTERS) {
+            try {
+                Method m = dataSource.getClass().getMethod(getter);
+                Object size = m.invoke(dataSource);
+                if (size instanceof Number && ((Number) size).intValue() > 0) {
+                    return ((Number) size).intValue();
+                }
+            } catch (Exception e) {
+                // 不是这种连接池
+            }
+        }
+        return DEFAULT_CONCURRENCY;
+    }
+
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Exception e) {
+            // JDK 21之前没有虚拟线程
+            return null;
+        }
+    }
+
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger seq = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.chobit.ar4j.core;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 将结果集按列读入Columns。列的存储类型优先取表的列类型，表中没有的列(如聚合结果)取结果集元数据中的类型
+ */
+final class ColumnarReader {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String[] names;
+
+    private final int[] indexes;
+
+    private final int[] kinds;
+
+    private final Map<String, Integer> index;
+
+    private ColumnarReader(String[] names, int[] indexes, int[] kinds) {
+        this.names = names;
+        this.indexes = indexes;
+        this.kinds = kinds;
+        Map<String, Integer> map = new HashMap<String, Integer>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            map.put(names[i], i);
+        }
+        this.index = Collections.unmodifiableMap(map);
+    }
+
+
+    static ColumnarReader of(Table table, ResultSetMetaData meta) throws SQLException {
+        int columnCount = meta.getColumnCount();
+        Map<String, Integer> label2Index = new HashMap<String, Integer>(columnCount * 2);
+        String[] names = new String[columnCount];
+        int[] indexes = new int[columnCount];
+        int[] kinds = new int[columnCount];
+        int n = 0;
+        for (int i = 1; i <= columnCount; i++) {
+            String label = meta.getColumnLabel(i);
+            // 与RowMapper一致，同名列只取第一列
+            if (label2Index.containsKey(label)) {
+                continue;
+            }
+            label2Index.put(label, i);
+            names[n] = label;
+            indexes[n] = i;
+            Class clazz = table.getColumnClass(label);
+            kinds[n] = null != clazz ? kindOf(clazz.getName()) : kindOf(meta.getColumnClassName(i));
+            n++;
+        }
+        return new ColumnarReader(Arrays.copyOf(names, n), Arrays.copyOf(indexes, n), Arrays.copyOf(kinds, n));
+    }
+
+
+    private static int kindOf(String className) {
+        if (Long.class.getName().equals(className)) {
+            return Columns.LONG;
+        }
+        if (Integer.class.getName().equals(className) || Short.class.getName().equals(className)
+                || Byte.class.getName().equals(className)) {
+            return Columns.INT;
+        }
+        if (Double.class.getName().equals(className) || Float.class.getName().equals(className)) {
+            return Columns.DOUBLE;
+        }
+        return Columns.OBJECT;
+    }
+
+
+    /**
+     * 从结果集的当前位置读取至多limit行，limit不大于0时读取全部剩余的行
+     */
+    Columns read(ResultSet rs, int limit) throws SQLException {
+        int capacity = limit > 0 ? limit : INITIAL_CAPACITY;
+        int width = names.length;
+        Object[] data = new Object[width];
+        BitSet[] nulls = new BitSet[width];
+        for (int j = 0; j < width; j++) {
+            data[j] = allocate(kinds[j], capacity);
+            nulls[j] = new BitSet();
+        }
+        int row = 0;
+        while ((limit <= 0 || row < limit) && rs.next()) {
+            if (row == capacity) {
+                capacity = capacity * 2;
+                for (int j = 0; j < width; j++) {
+                    data[j] = grow(kinds[j], data[j], capacity);
+                }
+            }
+            for (int j = 0; j < width; j++) {
+                int i = indexes[j];
+                switch (kinds[j]) {
+                    case Columns.LONG:
+                        ((long[]) data[j])[row] = rs.getLong(i);
+                        break;
+                    case Columns.INT:
+                        ((int[]) data[j])[row] = rs.getInt(i);
+                        break;
+                    case Columns.DOUBLE:
+                        ((double[]) data[j])[row] = rs.getDouble(i);
+                        break;
+                    default:
+                        ((Object[]) data[j])[row] = rs.getObject(i);
+                }
+                if (rs.wasNull()) {
+                    nulls[j].set(row);
+                }
+            }
+            row++;
+        }
+        return new Columns(names, index, kinds, data, nulls, row);
+    }
+
+
+    private static Object allocate(int kind, int capacity) {
+        switch (kind) {
+            case Columns.LONG:
+                return new long[capacity];
+            case Columns.INT:
+                return new int[capacity];
+            case Columns.DOUBLE:
+                return new double[capacity];
+            default:
+                return new Object[capacity];
+        }
+    }
+
+
+    private static Object grow(int kind, Object array, int capacity) {
+        switch (kind) {
+            case Columns.LONG:
+                return Arrays.copyOf((long[]) array, capacity);
+            case Columns.INT:
+                return Arrays.copyOf((int[]) array, capacity);
+            case Columns.DOUBLE:
+                return Arrays.copyOf((double[]) array, capacity);
+            default:
+                return Arrays.copyOf((Object[]) array, capacity);
+        }
+    }
+}
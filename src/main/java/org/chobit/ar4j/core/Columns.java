@@ -0,0 +1,142 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.exception.ArException;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * 按列存储的查询结果。整数列保存在long[]或int[]中，浮点数列保存在double[]中，其他列保存在Object[]中，
+ * 每列另有一个BitSet记录为null的行，null行在基本类型数组中的值为0。
+ * <p>
+ * 各数组的长度可能大于size()，只有前size()个元素有效。
+ */
+public final class Columns {
+
+    static final int LONG = 0;
+
+    static final int INT = 1;
+
+    static final int DOUBLE = 2;
+
+    static final int OBJECT = 3;
+
+    private final String[] names;
+
+    private final Map<String, Integer> index;
+
+    private final int[] kinds;
+
+    private final Object[] data;
+
+    private final BitSet[] nulls;
+
+    private final int size;
+
+    Columns(String[] names, Map<String, Integer> index, int[] kinds, Object[] data, BitSet[] nulls, int size) {
+        this.names = names;
+        this.index = index;
+        this.kinds = kinds;
+        this.data = data;
+        this.nulls = nulls;
+        this.size = size;
+    }
+
+
+    /**
+     * 行数
+     */
+    public int size() {
+        return this.size;
+    }
+
+
+    public int getColumnCount() {
+        return this.names.length;
+    }
+
+
+    public String getName(int column) {
+        return this.names[column];
+    }
+
+
+    /**
+     * 列的序号，不存在时返回-1
+     */
+    public int indexOf(String name) {
+        Integer i = this.index.get(name);
+        if (null == i) {
+            for (int j = 0; j < names.length; j++) {
+                if (names[j].equalsIgnoreCase(name)) {
+                    return j;
+                }
+            }
+            return -1;
+        }
+        return i;
+    }
+
+
+    /**
+     * 列类型为Long时返回long[]
+     */
+    public long[] getLongs(String name) {
+        return (long[]) column(name, LONG, "long");
+    }
+
+
+    /**
+     * 列类型为Integer、Short或Byte时返回int[]
+     */
+    public int[] getInts(String name) {
+        return (int[]) column(name, INT, "int");
+    }
+
+
+    /**
+     * 列类型为Double或Float时返回double[]
+     */
+    public double[] getDoubles(String name) {
+        return (double[]) column(name, DOUBLE, "double");
+    }
+
+
+    /**
+     * 其他类型的列返回Object[]
+     */
+    public Object[] getObjects(String name) {
+        return (Object[]) column(name, OBJECT, "object");
+    }
+
+
+    /**
+     * 为null的行，不要修改返回的BitSet
+     */
+    public BitSet getNulls(String name) {
+        return this.nulls[require(name)];
+    }
+
+
+    public boolean isNull(String name, int row) {
+        return this.nulls[require(name)].get(row);
+    }
+
+
+    private Object column(String name, int kind, String type) {
+        int i = require(name);
+        if (kinds[i] != kind) {
+            throw new ArException("column " + name + " is not stored as " + type + ".");
+        }
+        return data[i];
+    }
+
+
+    private int require(String name) {
+        int i = indexOf(name);
+        if (i < 0) {
+            throw new ArException("column " + name + " not found.");
+        }
+        return i;
+    }
+}
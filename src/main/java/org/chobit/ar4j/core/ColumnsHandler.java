@@ -0,0 +1,14 @@
+package org.chobit.ar4j.core;
+
+
+/**
+ * 按列分块读取时逐块处理结果
+ */
+public interface ColumnsHandler {
+
+    /**
+     * 处理一块记录，返回false时停止读取后续记录
+     */
+    boolean handle(Columns chunk);
+
+}
@@ -0,0 +1,221 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.dialect.CsvFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * 将Model逐条写为CSV的输入流，格式见CsvFormat及BulkLoadDialect。记录在读取时才从迭代器中取出，
+ * 编码结果通过固定大小的缓冲区输出，不会在内存中生成完整的数据。记录写出后即清除修改状态
+ */
+final class CsvInputStream<M extends Model> extends InputStream {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Iterator<M> models;
+
+    private final String[] columns;
+
+    private final CsvFormat format;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    private final ByteBuffer out;
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private CharBuffer chars = CharBuffer.allocate(0);
+
+    private M next;
+
+    private boolean finished;
+
+    private long rows;
+
+    /**
+     * first为迭代器中已取出的第一条记录，所有记录的列须与first的列相同
+     */
+    CsvInputStream(M first, Iterator<M> models, int bufferSize, CsvFormat format) {
+        this.next = first;
+        this.models = models;
+        this.columns = first.getProps().keyArray();
+        this.format = format;
+        this.out = ByteBuffer.allocate(bufferSize);
+        this.out.flip();
+    }
+
+
+    String[] getColumns() {
+        return this.columns;
+    }
+
+
+    /**
+     * 已经写出的记录数
+     */
+    long getRows() {
+        return this.rows;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return -1 == read(b, 0, 1) ? -1 : b[0] & 0xff;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (0 == len) {
+            return 0;
+        }
+        if (!out.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, out.remaining());
+        out.get(b, off, n);
+        return n;
+    }
+
+
+    @Override
+    public int available() {
+        return out.remaining();
+    }
+
+
+    /**
+     * 向缓冲区写入下一段数据，没有更多数据时返回false
+     */
+    private boolean fill() throws IOException {
+        if (finished) {
+            return false;
+        }
+        out.clear();
+        while (out.hasRemaining()) {
+            if (chars.hasRemaining()) {
+                CoderResult result = encoder.encode(chars, out, false);
+                if (result.isOverflow()) {
+                    break;
+                }
+                continue;
+            }
+            M m = nextModel();
+            if (null == m) {
+                encoder.encode(chars, out, true);
+                encoder.flush(out);
+                finished = true;
+                break;
+            }
+            line.setLength(0);
+            appendRow(m);
+            chars = CharBuffer.wrap(line);
+            rows++;
+        }
+        out.flip();
+        return out.hasRemaining();
+    }
+
+
+    private M nextModel() {
+        if (null != next) {
+            M m = next;
+            next = null;
+            return m;
+        }
+        return models.hasNext() ? models.next() : null;
+    }
+
+
+    private void appendRow(M m) throws IOException {
+        Props props = m.getProps();
+        if (props.size() != columns.length) {
+            throw new IOException("columns of model differ from " + Arrays.toString(columns) + ": " + props.keySet());
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (!props.containsKey(columns[i])) {
+                throw new IOException("columns of model differ from " + Arrays.toString(columns) + ": " + props.keySet());
+            }
+            if (i > 0) {
+                line.append(',');
+            }
+            appendValue(props.get(columns[i]));
+        }
+        line.append('\n');
+        props.clearDirty();
+    }
+
+
+    private void appendValue(Object value) throws IOException {
+        if (null == value) {
+            line.append(format.getNullValue());
+            return;
+        }
+        if (value instanceof byte[]) {
+            throw new IOException("binary value is not supported by bulk load.");
+        }
+        String s;
+        if (value instanceof java.util.Date && !(value instanceof java.sql.Date) && !(value instanceof java.sql.Time)) {
+            s = value instanceof Timestamp ? value.toString() : new Timestamp(((java.util.Date) value).getTime()).toString();
+        } else {
+            s = value.toString();
+        }
+        if (format.isBackslashEscape()) {
+            appendEscaped(s);
+            return;
+        }
+        boolean quote = s.isEmpty();
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = ',' == c || '"' == c || '\n' == c || '\r' == c;
+        }
+        if (!quote) {
+            line.append(s);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ('"' == c) {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+
+    private void appendEscaped(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                case ',':
+                case '"':
+                    line.append('\\').append(c);
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\0':
+                    line.append("\\0");
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+}
@@ -2,13 +2,21 @@ package org.chobit.ar4j.core;
 
 
 import org.chobit.ar4j.core.cache.Cache;
+import org.chobit.ar4j.core.dialect.BulkLoadDialect;
+import org.chobit.ar4j.core.dialect.MultiRowInsertDialect;
+import org.chobit.ar4j.core.dialect.UpsertDialect;
+import org.chobit.ar4j.core.exception.ArConfigException;
 import org.chobit.ar4j.core.exception.ArException;
 import org.chobit.ar4j.core.exception.ArSQLException;
+import org.chobit.ar4j.core.metrics.Operation;
 
 import java.math.BigInteger;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Model类，封装了一系列对表的操作方法
@@ -17,10 +25,15 @@ import java.util.Date;
  */
 public abstract class Model<M extends Model> {
 
-    private final Map<String, Object> props = new TreeMap<String, Object>();
+    /**
+     * 按主键批量查询时in子句中占位符数量的档位
+     */
+    private static final int[] IN_BUCKETS = {1, 4, 16, 64, 256};
 
+    private final Props props = new Props(Ar.findLayout(getClass()));
 
-    Map<String, Object> getProps() {
+
+    Props getProps() {
         return this.props;
     }
 
@@ -31,34 +44,226 @@ public abstract class Model<M extends Model> {
     }
 
 
+    /**
+     * 批量写入。Model按属性的组合分组，每组按ArConfig中设置的batchSize分批执行
+     */
     public void batchSave(Collection<M> models) {
+        batchSave(getTableName(), models);
+    }
+
+
+    void batchSave(String tableName, Collection<M> models) {
         if (null == models || models.isEmpty()) return;
         Connection conn = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
         try {
-            conn = Ar.getConnection(getClass());
-            StringBuilder sql = new StringBuilder();
-            String tableName = getTableName();
-            M m = models.iterator().next();
-            ArHelper.buildBatchInsert(tableName, m.getProps(), sql);
-            batchSave(conn, sql.toString(), models);
+            ModelMeta meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.BATCH_SAVE);
+            ArConfig config = meta.getConfig();
+            Table table = meta.getTable();
+            conn = Ar.getConnection(meta);
+            probe.connected();
+            int batchSize = config.getBatchSize();
+            for (List<M> group : ArHelper.groupByShape(models)) {
+                String[] columns = group.get(0).getProps().keyArray();
+                if (config.isMultiRowInsert()) {
+                    int maxParams = ((MultiRowInsertDialect) config.getDialect()).maxInsertParams();
+                    int rows = Math.max(1, Math.min(batchSize, maxParams / Math.max(1, columns.length)));
+                    multiRowSave(conn, table, tableName, columns, group, rows);
+                } else {
+                    String sql = ArHelper.buildBatchInsert(table, tableName, columns);
+                    batchSave(conn, sql, group, batchSize);
+                }
+            }
+            probe.executed();
+            probe.rows(models.size());
+            for (M m : models) {
+                m.getProps().clearDirty();
+            }
         } catch (Exception e) {
+            error = e;
             throw new ArSQLException("batch insert error", e);
         } finally {
             ArHelper.closeConnection(conn);
+            probe.end(error);
+        }
+    }
+
+
+    /**
+     * 批量导入。models中的记录在导入过程中按需读取，按BulkLoadDialect.bulkLoadFormat()写出后交给BulkLoadDialect导入，
+     * 各记录的列须相同，自增主键不会回填。记录写出后即清除修改状态，导入失败时已读取的记录不再标记为修改过。
+     * SeqModel按suffixOf()选择分表，连续写入同一分表的记录合并为一次导入。
+     * Dialect未实现BulkLoadDialect时按batchSize分批执行batchSave()。返回导入的记录数
+     */
+    public long bulkLoad(Iterator<M> models) {
+        if (null == models || !models.hasNext()) return 0;
+        ModelMeta meta = Ar.getMeta(getClass());
+        if (!(meta.getDialect() instanceof BulkLoadDialect)) {
+            return bulkLoadInBatches(meta, models);
+        }
+        BulkLoadDialect dialect = (BulkLoadDialect) meta.getDialect();
+        Connection conn = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
+        try {
+            probe = Probe.start(meta, Operation.BULK_LOAD);
+            conn = Ar.getConnection(meta);
+            probe.connected();
+            long loaded = 0;
+            M first = models.next();
+            while (null != first) {
+                TableRun run = new TableRun(tableOf(first), models);
+                CsvInputStream<M> input = new CsvInputStream<M>(first, run, CsvInputStream.BUFFER_SIZE, dialect.bulkLoadFormat());
+                loaded += dialect.bulkLoad(conn, run.tableName, input.getColumns(), input);
+                first = run.following();
+            }
+            probe.executed();
+            probe.rows(loaded);
+            return loaded;
+        } catch (Exception e) {
+            error = e;
+            throw new ArSQLException("bulk load error", e);
+        } finally {
+            ArHelper.closeConnection(conn);
+            probe.end(error);
+        }
+    }
+
+
+    public long bulkLoad(Stream<M> models) {
+        return bulkLoad(models.iterator());
+    }
+
+
+    private long bulkLoadInBatches(ModelMeta meta, Iterator<M> models) {
+        int batchSize = meta.getConfig().getBatchSize();
+        List<M> chunk = new ArrayList<M>(Math.min(batchSize, 1024));
+        long count = 0;
+        while (models.hasNext()) {
+            chunk.add(models.next());
+            if (chunk.size() >= batchSize || !models.hasNext()) {
+                batchSave(chunk);
+                count += chunk.size();
+                chunk.clear();
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * 记录写入的表，SeqModel按suffixOf()选择分表
+     */
+    String tableOf(M m) {
+        return getTableName();
+    }
+
+
+    /**
+     * 从models中连续读取写入tableName表的记录，遇到写入其他表的记录时结束
+     */
+    private final class TableRun implements Iterator<M> {
+
+        private final String tableName;
+
+        private final Iterator<M> models;
+
+        private M next;
+
+        private M following;
+
+        TableRun(String tableName, Iterator<M> models) {
+            this.tableName = tableName;
+            this.models = models;
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            if (null != next) {
+                return true;
+            }
+            if (null != following || !models.hasNext()) {
+                return false;
+            }
+            M m = models.next();
+            if (tableName.equals(tableOf(m))) {
+                next = m;
+            } else {
+                following = m;
+            }
+            return null != next;
+        }
+
+
+        @Override
+        public M next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            M m = next;
+            next = null;
+            return m;
+        }
+
+
+        /**
+         * 写入其他表的第一条记录，没有时返回null
+         */
+        M following() {
+            if (hasNext()) {
+                // 导入语句未读完全部数据，剩余的记录不会写入
+                throw new ArException("bulk load of " + tableName + " ended before all rows were read.");
+            }
+            return following;
         }
     }
 
 
-    private void batchSave(Connection conn, String sql, Collection<M> models) throws SQLException {
+    private void batchSave(Connection conn, String sql, List<M> models, int batchSize) throws SQLException {
         PreparedStatement ps = null;
         try {
-            ps = conn.prepareStatement(sql);
+            ps = ArHelper.prepareStatement(conn, sql);
+            int count = 0;
             for (M m : models) {
                 Object[] params = ArHelper.genBatchParams(m.getProps());
                 ArHelper.prepare(ps, params);
                 ps.addBatch();
+                if (++count % batchSize == 0) {
+                    ps.executeBatch();
+                }
+            }
+            if (count % batchSize != 0) {
+                ps.executeBatch();
+            }
+        } finally {
+            ArHelper.closePreparedStatement(ps);
+        }
+    }
+
+
+    private void multiRowSave(Connection conn, Table table, String tableName, String[] columns, List<M> models, int rows) throws SQLException {
+        PreparedStatement ps = null;
+        String preparedSql = null;
+        try {
+            for (int from = 0; from < models.size(); from += rows) {
+                int to = Math.min(from + rows, models.size());
+                String sql = ArHelper.buildMultiRowInsert(table, tableName, columns, to - from);
+                if (!sql.equals(preparedSql)) {
+                    ArHelper.closePreparedStatement(ps);
+                    ps = ArHelper.prepareStatement(conn, sql);
+                    preparedSql = sql;
+                }
+                int index = 1;
+                for (int i = from; i < to; i++) {
+                    for (Object param : ArHelper.genBatchParams(models.get(i).getProps())) {
+                        ps.setObject(index++, param);
+                    }
+                }
+                ps.executeUpdate();
             }
-            ps.executeBatch();
         } finally {
             ArHelper.closePreparedStatement(ps);
         }
@@ -67,55 +272,197 @@ public abstract class Model<M extends Model> {
 
     public boolean save() {
         Connection conn = null;
-        StringBuilder sql = new StringBuilder();
+        String sql = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
         try {
-            conn = Ar.getConnection(getClass());
+            ModelMeta meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.SAVE);
+            Table table = meta.getTable();
+            conn = Ar.getConnection(meta);
+            probe.connected();
             List<Object> params = new ArrayList<Object>();
-            String tableName = getTableName();
-            ArHelper.buildInsert(tableName, getProps(), sql, params);
-            return save(conn, sql.toString(), params);
+            sql = ArHelper.buildInsert(table, getTableName(), getProps(), params);
+            boolean saved = save(conn, table, sql, params);
+            if (saved) {
+                getProps().clearDirty();
+            }
+            probe.executed();
+            probe.rows(saved ? 1 : 0);
+            return saved;
         } catch (Exception e) {
-            throw new ArSQLException(sql.toString(), e);
+            error = e;
+            throw new ArSQLException(sql, e);
         } finally {
             ArHelper.closeConnection(conn);
+            probe.end(error);
         }
     }
 
 
-    private boolean save(Connection conn, String sql, List<Object> params) throws SQLException {
+    private boolean save(Connection conn, Table table, String sql, List<Object> params) throws SQLException {
         PreparedStatement ps = null;
         try {
-            ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            ps = ArHelper.prepareInsertStatement(conn, sql);
             ArHelper.prepare(ps, params.toArray());
-            return ArHelper.executeInsert(getClass(), getProps(), ps);
+            return ArHelper.executeInsert(table, getProps(), ps);
         } finally {
             ArHelper.closePreparedStatement(ps);
         }
     }
 
 
+    /**
+     * 异步执行save()，在ArConfig的异步执行器中执行
+     */
+    public CompletableFuture<Boolean> saveAsync() {
+        return Ar.requireConfig(getClass()).async(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return save();
+            }
+        });
+    }
+
+
+    /**
+     * 写入记录，主键对应的记录已存在时更新记录中设置过的列。需要Dialect实现UpsertDialect接口。
+     * 返回值为受影响的行数是否大于0，MySQL在记录已存在且各列的值未改变时返回false
+     */
+    public boolean upsert() {
+        ModelMeta meta = Ar.getMeta(getClass());
+        UpsertDialect dialect = upsertDialect(meta);
+        ArHelper.checkUpsertColumns(meta.getTable(), getProps().keyArray());
+        Connection conn = null;
+        String sql = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
+        try {
+            probe = Probe.start(meta, Operation.UPSERT);
+            conn = Ar.getConnection(meta);
+            probe.connected();
+            sql = ArHelper.buildUpsert(meta.getTable(), getTableName(), dialect, getProps().keyArray());
+            boolean upserted = update(conn, sql, Arrays.asList(ArHelper.genBatchParams(getProps())));
+            getProps().clearDirty();
+            probe.executed();
+            probe.rows(upserted ? 1 : 0);
+            return upserted;
+        } catch (Exception e) {
+            error = e;
+            throw new ArSQLException(sql, e);
+        } finally {
+            ArHelper.closeConnection(conn);
+            probe.end(error);
+        }
+    }
+
+
+    /**
+     * 批量upsert。与batchSave()一样按属性的组合分组，每组按ArConfig中设置的batchSize分批执行
+     */
+    public void batchUpsert(Collection<M> models) {
+        batchUpsert(getTableName(), models);
+    }
+
+
+    void batchUpsert(String tableName, Collection<M> models) {
+        if (null == models || models.isEmpty()) return;
+        ModelMeta meta = Ar.getMeta(getClass());
+        UpsertDialect dialect = upsertDialect(meta);
+        for (M m : models) {
+            ArHelper.checkUpsertColumns(meta.getTable(), m.getProps().keyArray());
+        }
+        Connection conn = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
+        try {
+            probe = Probe.start(meta, Operation.BATCH_UPSERT);
+            conn = Ar.getConnection(meta);
+            probe.connected();
+            int batchSize = meta.getConfig().getBatchSize();
+            for (List<M> group : ArHelper.groupByShape(models)) {
+                String[] columns = group.get(0).getProps().keyArray();
+                String sql = ArHelper.buildUpsert(meta.getTable(), tableName, dialect, columns);
+                batchSave(conn, sql, group, batchSize);
+            }
+            probe.executed();
+            probe.rows(models.size());
+            for (M m : models) {
+                m.getProps().clearDirty();
+            }
+        } catch (Exception e) {
+            error = e;
+            throw new ArSQLException("batch upsert error", e);
+        } finally {
+            ArHelper.closeConnection(conn);
+            probe.end(error);
+        }
+    }
+
+
+    private static UpsertDialect upsertDialect(ModelMeta meta) {
+        if (!(meta.getDialect() instanceof UpsertDialect)) {
+            throw new ArConfigException("upsert is not supported by dialect: " + meta.getDialect().getClass().getName());
+        }
+        return (UpsertDialect) meta.getDialect();
+    }
+
+
+    /**
+     * 更新加载或上次保存后修改过的列，没有修改过的列时直接返回true，不访问数据库
+     */
     public boolean update() {
         Connection conn = null;
-        StringBuilder sql = new StringBuilder();
+        String sql = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
         try {
-            conn = Ar.getConnection(getClass());
-            return update(conn, sql);
+            ModelMeta meta = Ar.getMeta(getClass());
+            if (!getProps().isDirty()) {
+                return true;
+            }
+            List<Object> params = new ArrayList<Object>();
+            sql = ArHelper.buildUpdate(meta.getTable(), getTableName(), getProps(), params);
+            if (null == sql) {
+                return true;
+            }
+            probe = Probe.start(meta, Operation.UPDATE);
+            conn = Ar.getConnection(meta);
+            probe.connected();
+            boolean updated = update(conn, sql, params);
+            if (updated) {
+                getProps().clearDirty();
+            }
+            probe.executed();
+            probe.rows(updated ? 1 : 0);
+            return updated;
         } catch (Exception e) {
-            throw new ArSQLException(sql.toString(), e);
+            error = e;
+            throw new ArSQLException(sql, e);
         } finally {
             ArHelper.closeConnection(conn);
+            probe.end(error);
         }
     }
 
 
-    private boolean update(Connection conn, StringBuilder sql) throws SQLException {
+    /**
+     * 异步执行update()，在ArConfig的异步执行器中执行
+     */
+    public CompletableFuture<Boolean> updateAsync() {
+        return Ar.requireConfig(getClass()).async(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return update();
+            }
+        });
+    }
+
+
+    private boolean update(Connection conn, String sql, List<Object> params) throws SQLException {
         PreparedStatement ps = null;
         try {
-            List<Object> params = new ArrayList<Object>();
-            String tableName = getTableName();
-            String primaryKey = Ar.getPrimaryKey(getClass());
-            ArHelper.buildUpdate(tableName, getProps(), sql, params, primaryKey);
-            ps = conn.prepareStatement(sql.toString());
+            ps = ArHelper.prepareStatement(conn, sql);
             ArHelper.prepare(ps, params.toArray());
             return ps.executeUpdate() >= 1;
         } finally {
@@ -126,42 +473,61 @@ public abstract class Model<M extends Model> {
 
     protected boolean delete() {
         Connection conn = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
         try {
-            conn = Ar.getConnection(getClass());
-            return delete(conn);
+            ModelMeta meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.DELETE);
+            conn = Ar.getConnection(meta);
+            probe.connected();
+            boolean deleted = delete(conn, meta.getTable());
+            probe.executed();
+            probe.rows(deleted ? 1 : 0);
+            return deleted;
         } catch (Exception e) {
+            error = e;
             throw new ArException("execute delete error.", e);
         } finally {
             ArHelper.closeConnection(conn);
+            probe.end(error);
         }
     }
 
 
-    private boolean delete(Connection conn) throws SQLException {
-        String primaryKey = Ar.getPrimaryKey(getClass());
-        Object id = getObject(primaryKey);
-        return deleteByPrimaryKey(conn, id);
+    private boolean delete(Connection conn, Table table) throws SQLException {
+        Object id = getObject(table.getPrimaryKey());
+        return deleteByPrimaryKey(conn, table, id);
     }
 
 
     protected boolean deleteByPrimaryKey(Object value) {
         Connection conn = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
         try {
-            conn = Ar.getConnection(getClass());
-            return deleteByPrimaryKey(conn, value);
+            ModelMeta meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.DELETE);
+            conn = Ar.getConnection(meta);
+            probe.connected();
+            boolean deleted = deleteByPrimaryKey(conn, meta.getTable(), value);
+            probe.executed();
+            probe.rows(deleted ? 1 : 0);
+            return deleted;
         } catch (Exception e) {
+            error = e;
             throw new ArException("execute delete error.", e);
         } finally {
             ArHelper.closeConnection(conn);
+            probe.end(error);
         }
 
     }
 
-    private boolean deleteByPrimaryKey(Connection conn, Object value) throws SQLException {
+    private boolean deleteByPrimaryKey(Connection conn, Table table, Object value) throws SQLException {
         PreparedStatement ps = null;
         try {
-            String sql = ArHelper.buildDeleteByPrimaryKey(getClass(), getTableName());
-            ps = conn.prepareStatement(sql);
+            String sql = ArHelper.buildDeleteByPrimaryKey(table, getTableName());
+            ps = ArHelper.prepareStatement(conn, sql);
             ArHelper.prepare(ps, value);
             return ps.executeUpdate() >= 1;
         } finally {
@@ -170,31 +536,108 @@ public abstract class Model<M extends Model> {
     }
 
 
-    public M findByPrimaryKey(Cache cache, String key, Object id) {
-        M m = cache.get(key);
-        if (null != m) {
-            return m;
-        }
-        m = findByPrimaryKey(id);
-        cache.put(key, m);
-        return m;
+    public M findByPrimaryKey(Cache cache, String key, final Object id) {
+        return SingleFlight.load(getClass(), Operation.FIND, cache, key, new Callable<M>() {
+            @Override
+            public M call() {
+                return findByPrimaryKey(id);
+            }
+        });
     }
 
     public M findByPrimaryKey(Object id) {
-        String tableName = getTableName();
-        String sql = ArHelper.buildGet(getClass(), tableName);
+        String sql = ArHelper.buildGet(Ar.getTable(getClass()), getTableName());
         return findFirst(sql, id);
     }
 
 
-    protected M findFirst(Cache cache, String key, String sql, Object... params) {
-        M m = cache.get(key);
-        if (null != m) {
-            return m;
+    /**
+     * 异步执行findByPrimaryKey(id)，在ArConfig的异步执行器中执行
+     */
+    public CompletableFuture<M> findByPrimaryKeyAsync(final Object id) {
+        return Ar.requireConfig(getClass()).async(new Callable<M>() {
+            @Override
+            public M call() {
+                return findByPrimaryKey(id);
+            }
+        });
+    }
+
+
+    /**
+     * 按主键批量查询，结果按ids的顺序排列，不存在的记录会被忽略，重复的主键只保留一条记录
+     */
+    public List<M> findByPrimaryKeys(Collection<?> ids) {
+        return new ArrayList<M>(findMapByPrimaryKeys(ids).values());
+    }
+
+
+    /**
+     * 按主键批量查询，返回以主键为key的Map，Map中记录的顺序与ids一致。
+     * <p>
+     * 主键以占位符的形式绑定，ids较多时分批查询，每批的占位符数量向上取整到固定的档位并以最后一个主键补齐，
+     * 使得SQL语句可以被复用。
+     */
+    public <K> Map<K, M> findMapByPrimaryKeys(Collection<K> ids) {
+        Map<K, M> result = new LinkedHashMap<K, M>();
+        if (null == ids || ids.isEmpty()) {
+            return result;
         }
-        m = findFirst(sql, params);
-        cache.put(key, m);
-        return m;
+        ModelMeta meta = Ar.getMeta(getClass());
+        Table table = meta.getTable();
+        String tableName = getTableName();
+        String primaryKey = table.getPrimaryKey();
+        List<K> keys = new ArrayList<K>(new LinkedHashSet<K>(ids));
+        Map<Object, M> found = new HashMap<Object, M>(keys.size() * 2);
+        Connection conn = null;
+        String sql = null;
+        Probe probe = Probe.start(meta, Operation.FIND);
+        Throwable error = null;
+        try {
+            conn = Ar.getReadConnection(meta);
+            probe.connected();
+            for (int from = 0; from < keys.size(); from += IN_BUCKETS[IN_BUCKETS.length - 1]) {
+                int to = Math.min(from + IN_BUCKETS[IN_BUCKETS.length - 1], keys.size());
+                int bucket = 0;
+                while (IN_BUCKETS[bucket] < to - from) {
+                    bucket++;
+                }
+                int size = IN_BUCKETS[bucket];
+                Object[] params = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    params[i] = keys.get(Math.min(from + i, to - 1));
+                }
+                sql = ArHelper.buildGetIn(table, tableName, size);
+                probe.mark();
+                for (M m : find(conn, table, probe, sql, params)) {
+                    found.put(ArHelper.normalizeKey(m.getObject(primaryKey)), m);
+                }
+            }
+        } catch (Exception e) {
+            error = e;
+            Ar.readFailed(meta, conn, e);
+            throw new ArSQLException(sql, e);
+        } finally {
+            ArHelper.closeConnection(conn);
+            probe.end(error);
+        }
+        for (K k : keys) {
+            M m = found.get(ArHelper.normalizeKey(k));
+            if (null != m) {
+                result.put(k, m);
+            }
+        }
+        return result;
+    }
+
+
+    protected M findFirst(Cache cache, String key, final String sql, final Object... params) {
+        return SingleFlight.load(getClass(), Operation.FIND, cache, key, new Callable<M>() {
+            @Override
+            public M call() {
+                return findFirst(sql, params);
+            }
+        });
     }
 
     protected M findFirst(String sql, Object... params) {
@@ -203,44 +646,278 @@ public abstract class Model<M extends Model> {
     }
 
 
-    protected List<M> find(Cache cache, String key, String sql, Object... params) {
-        List<M> result = cache.get(key);
-        if (null != result) {
+    protected List<M> find(Cache cache, String key, final String sql, final Object... params) {
+        return SingleFlight.load(getClass(), Operation.FIND, cache, key, new Callable<List<M>>() {
+            @Override
+            public List<M> call() {
+                return find(sql, params);
+            }
+        });
+    }
+
+
+    protected List<M> find(String sql, Object... params) {
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
+        try {
+            ModelMeta meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.FIND);
+            return find(meta, probe, sql, params);
+        } catch (ArSQLException e) {
+            error = e;
+            throw e;
+        } catch (RuntimeException e) {
+            error = e;
+            throw new ArSQLException(sql, e);
+        } finally {
+            probe.end(error);
+        }
+    }
+
+
+    /**
+     * 异步执行find(sql, params)，在ArConfig的异步执行器中执行
+     */
+    protected CompletableFuture<List<M>> findAsync(final String sql, final Object... params) {
+        return Ar.requireConfig(getClass()).async(new Callable<List<M>>() {
+            @Override
+            public List<M> call() {
+                return find(sql, params);
+            }
+        });
+    }
+
+
+    /**
+     * 按主键分页查询，cursor为null时查询第一页，pageSize不大于0时使用Dialect的默认值
+     */
+    public Page<M> findPage(String cursor, int pageSize) {
+        return findPage(null, cursor, pageSize, null);
+    }
+
+
+    /**
+     * 按column升序分页查询。使用"column > ?"定位下一页的起点，查询较靠后的页时不需要跳过前面的记录。
+     * column的值可以重复，但不能为null；sqlWhere为附加的查询条件，可以为null
+     */
+    protected Page<M> findPage(String column, String cursor, int pageSize, String sqlWhere, Object... params) {
+        String tableName = getTableName();
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
+        try {
+            ModelMeta meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.FIND);
+            String[] keys = ArHelper.pageKeys(meta.getTable(), column);
+            int size = ArHelper.pageSize(meta.getDialect(), pageSize);
+            PageCursor after = PageCursor.decode(cursor, keys);
+            List<M> list = findPage(meta, probe, tableName, keys, null == after ? null : after.getValues(), size + 1, sqlWhere, params);
+            String next = null;
+            if (list.size() > size) {
+                list = list.subList(0, size);
+                next = PageCursor.encode(null, list.get(size - 1), keys);
+            }
+            return new Page<M>(list, next);
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            probe.end(error);
+        }
+    }
+
+
+    /**
+     * 在tableName中查询排在after之后的至多limit条记录，after为null时从第一条开始
+     */
+    List<M> findPage(ModelMeta meta, Probe probe, String tableName, String[] keys, Object[] after, int limit, String sqlWhere, Object... params) {
+        String sql = ArHelper.buildPage(meta.getTable(), tableName, meta.getDialect(), keys, sqlWhere, null != after);
+        return find(meta, probe, sql, ArHelper.pageParams(after, limit, params));
+    }
+
+
+    /**
+     * 获取连接执行查询，耗时记录到probe中
+     */
+    List<M> find(ModelMeta meta, Probe probe, String sql, Object... params) {
+        Connection conn = null;
+        try {
+            probe.mark();
+            conn = Ar.getReadConnection(meta);
+            probe.connected();
+            return find(conn, meta.getTable(), probe, sql, params);
+        } catch (Exception e) {
+            Ar.readFailed(meta, conn, e);
+            throw new ArSQLException(sql, e);
+        } finally {
+            ArHelper.closeConnection(conn);
+        }
+    }
+
+
+    private List<M> find(Connection conn, Table table, Probe probe, String sql, Object... params) throws SQLException, InstantiationException, IllegalAccessException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = ArHelper.prepareStatement(conn, sql);
+            ArHelper.prepare(ps, params);
+            rs = ps.executeQuery();
+            probe.executed();
+            List<M> result = ArHelper.obtainResult(table, rs);
+            probe.mapped(result.size());
             return result;
+        } finally {
+            ArHelper.closeResultSet(rs);
+            ArHelper.closePreparedStatement(ps);
         }
-        result = find(sql, params);
-        cache.put(key, result);
-        return result;
     }
 
 
-    protected List<M> find(String sql, Object... params) {
+    /**
+     * 流式查询，逐行映射记录并交给handler处理，不会在内存中保存全部结果
+     */
+    protected void scan(RowHandler<M> handler, String sql, Object... params) {
         Connection conn = null;
+        ModelMeta meta = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
         try {
-            conn = Ar.getConnection(getClass());
-            return find(conn, sql, params);
+            meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.SCAN);
+            conn = Ar.getReadConnection(meta);
+            probe.connected();
+            scan(conn, meta, probe, handler, sql, params);
+        } catch (RuntimeException e) {
+            error = e;
+            Ar.readFailed(meta, conn, e);
+            throw e;
         } catch (Exception e) {
+            error = e;
+            Ar.readFailed(meta, conn, e);
             throw new ArSQLException(sql, e);
         } finally {
             ArHelper.closeConnection(conn);
+            probe.end(error);
         }
     }
 
 
-    private List<M> find(Connection conn, String sql, Object... params) throws SQLException, InstantiationException, IllegalAccessException {
+    /**
+     * 使用只进游标执行流式查询，handler返回false时返回false。handler的处理时间计入映射耗时
+     */
+    boolean scan(Connection conn, ModelMeta meta, Probe probe, RowHandler<M> handler, String sql, Object... params) throws SQLException, InstantiationException, IllegalAccessException {
         PreparedStatement ps = null;
         ResultSet rs = null;
+        int rows = 0;
         try {
-            ps = conn.prepareStatement(sql);
+            probe.mark();
+            ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            int fetchSize = meta.getConfig().getFetchSize();
+            if (0 != fetchSize) {
+                ps.setFetchSize(fetchSize);
+            }
             ArHelper.prepare(ps, params);
             rs = ps.executeQuery();
-            return ArHelper.obtainResult(getClass(), rs);
+            probe.executed();
+            RowMapper mapper = RowMapper.of(meta.getTable(), rs.getMetaData());
+            while (rs.next()) {
+                M m = mapper.map(rs);
+                rows++;
+                if (!handler.handle(m)) {
+                    return false;
+                }
+            }
+            return true;
         } finally {
+            probe.mapped(rows);
             ArHelper.close(ps, rs);
         }
     }
 
 
+    /**
+     * 按列读取查询结果，整数和浮点数列保存在基本类型数组中，不创建Model实例
+     */
+    protected Columns findColumns(String sql, Object... params) {
+        final Columns[] result = new Columns[1];
+        readColumns(Operation.FIND, 0, new ColumnsHandler() {
+            @Override
+            public boolean handle(Columns chunk) {
+                result[0] = chunk;
+                return false;
+            }
+        }, sql, params);
+        return result[0];
+    }
+
+
+    /**
+     * 按列分块流式读取查询结果，每块至多chunkSize行，每块使用新的数组，handler返回false时停止读取
+     */
+    protected void scanColumns(int chunkSize, ColumnsHandler handler, String sql, Object... params) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        readColumns(Operation.SCAN, chunkSize, handler, sql, params);
+    }
+
+
+    /**
+     * chunkSize为0时一次读取全部结果，结果为空时handler也会收到一个空的Columns
+     */
+    private void readColumns(Operation operation, int chunkSize, ColumnsHandler handler, String sql, Object... params) {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        ModelMeta meta = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
+        long rows = 0;
+        try {
+            meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, operation);
+            conn = Ar.getReadConnection(meta);
+            probe.connected();
+            ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            int fetchSize = meta.getConfig().getFetchSize();
+            if (0 != fetchSize) {
+                ps.setFetchSize(fetchSize);
+            }
+            ArHelper.prepare(ps, params);
+            rs = ps.executeQuery();
+            probe.executed();
+            ColumnarReader reader = ColumnarReader.of(meta.getTable(), rs.getMetaData());
+            while (true) {
+                Columns chunk = reader.read(rs, chunkSize);
+                rows += chunk.size();
+                if (chunkSize > 0 && 0 == chunk.size()) {
+                    break;
+                }
+                if (!handler.handle(chunk) || chunk.size() < chunkSize || 0 == chunkSize) {
+                    break;
+                }
+            }
+            probe.mapped(0);
+            probe.rows(rows);
+        } catch (RuntimeException e) {
+            error = e;
+            Ar.readFailed(meta, conn, e);
+            throw e;
+        } catch (Exception e) {
+            error = e;
+            Ar.readFailed(meta, conn, e);
+            throw new ArSQLException(sql, e);
+        } finally {
+            try {
+                ArHelper.close(ps, rs);
+            } catch (SQLException e) {
+                // 结果已读取完毕
+            }
+            ArHelper.closeConnection(conn);
+            probe.end(error);
+        }
+    }
+
+
     protected String buildInClause(String column, Collection<Object> params) {
         return ArHelper.buildInClause(getClass(), column, params);
     }
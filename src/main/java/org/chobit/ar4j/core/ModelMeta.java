@@ -0,0 +1,41 @@
+package org.chobit.ar4j.core;
+
+
+import org.chobit.ar4j.core.dialect.Dialect;
+
+/**
+ * Model类的元数据快照，注册时一次性创建，之后不再修改，可以在线程间安全地共享
+ */
+final class ModelMeta {
+
+    private final Class<? extends Model> modelClass;
+
+    private final ArConfig config;
+
+    private final Table table;
+
+    private final Dialect dialect;
+
+    ModelMeta(Class<? extends Model> modelClass, ArConfig config, Table table) {
+        this.modelClass = modelClass;
+        this.config = config;
+        this.table = table;
+        this.dialect = config.getDialect();
+    }
+
+    Class<? extends Model> getModelClass() {
+        return this.modelClass;
+    }
+
+    ArConfig getConfig() {
+        return this.config;
+    }
+
+    Table getTable() {
+        return this.table;
+    }
+
+    Dialect getDialect() {
+        return this.dialect;
+    }
+}
@@ -0,0 +1,39 @@
+package org.chobit.ar4j.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分页查询的结果，包含当前页的记录以及查询下一页使用的游标
+ *
+ * @param <M> Model类型
+ */
+public final class Page<M> {
+
+    private final List<M> records;
+
+    private final String nextCursor;
+
+    Page(List<M> records, String nextCursor) {
+        this.records = Collections.unmodifiableList(records);
+        this.nextCursor = nextCursor;
+    }
+
+
+    public List<M> getRecords() {
+        return this.records;
+    }
+
+
+    /**
+     * 查询下一页使用的游标，已是最后一页时返回null。游标的内容不保证在版本间保持一致，不应该被解析或持久化
+     */
+    public String getNextCursor() {
+        return this.nextCursor;
+    }
+
+
+    public boolean hasNext() {
+        return null != this.nextCursor;
+    }
+}
@@ -0,0 +1,176 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.exception.ArException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 分页游标，记录上一页最后一条记录的排序列的值以及所在的表，编码为URL安全的Base64字符串
+ */
+final class PageCursor {
+
+    private static final byte VERSION = 1;
+
+    private final String tableName;
+
+    private final Object[] values;
+
+    PageCursor(String tableName, Object[] values) {
+        this.tableName = tableName;
+        this.values = values;
+    }
+
+
+    String getTableName() {
+        return this.tableName;
+    }
+
+
+    Object[] getValues() {
+        return this.values;
+    }
+
+
+    /**
+     * 以记录中keys各列的值创建游标，tableName为null时表示不分表
+     */
+    static String encode(String tableName, Model<?> m, String[] keys) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeUTF(null == tableName ? "" : tableName);
+            out.writeByte(keys.length);
+            for (String key : keys) {
+                writeValue(out, key, valueOf(m, key));
+            }
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new ArException("encode page cursor error.", e);
+        }
+    }
+
+
+    /**
+     * 取记录中列的值，列名与数据库返回的列名大小写不同(如H2、Oracle返回大写列名)时忽略大小写查找
+     */
+    private static Object valueOf(Model<?> m, String key) {
+        Props props = m.getProps();
+        if (props.containsKey(key)) {
+            return props.get(key);
+        }
+        for (Map.Entry<String, Object> e : props.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(key)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 解析游标，cursor为空时返回null。游标中值的数量与keys不一致时说明游标不是由同样的排序列生成的
+     */
+    static PageCursor decode(String cursor, String[] keys) {
+        if (null == cursor || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)));
+            if (VERSION != in.readByte()) {
+                throw new ArException("unsupported page cursor: " + cursor);
+            }
+            String tableName = in.readUTF();
+            int n = in.readByte();
+            if (n != keys.length) {
+                throw new ArException("page cursor does not match the sort columns: " + cursor);
+            }
+            Object[] values = new Object[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = readValue(in);
+            }
+            return new PageCursor(tableName.isEmpty() ? null : tableName, values);
+        } catch (IOException e) {
+            throw new ArException("invalid page cursor: " + cursor, e);
+        } catch (IllegalArgumentException e) {
+            throw new ArException("invalid page cursor: " + cursor, e);
+        }
+    }
+
+
+    private static void writeValue(DataOutputStream out, String key, Object value) throws IOException {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte('I');
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte('J');
+            out.writeLong((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte('D');
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte('M');
+            out.writeUTF(value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte('N');
+            out.writeUTF(value.toString());
+        } else if (value instanceof String) {
+            out.writeByte('S');
+            out.writeUTF((String) value);
+        } else if (value instanceof Timestamp) {
+            out.writeByte('T');
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte('d');
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Date) {
+            out.writeByte('t');
+            out.writeLong(((Date) value).getTime());
+        } else if (null == value) {
+            throw new ArException("column " + key + " used for paging cannot be null.");
+        } else {
+            throw new ArException("column " + key + " of type " + value.getClass().getName() + " cannot be used for paging.");
+        }
+    }
+
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case 'I':
+                return in.readInt();
+            case 'J':
+                return in.readLong();
+            case 'D':
+                return in.readDouble();
+            case 'M':
+                return new BigDecimal(in.readUTF());
+            case 'N':
+                return new BigInteger(in.readUTF());
+            case 'S':
+                return in.readUTF();
+            case 'T':
+                Timestamp ts = new Timestamp(in.readLong());
+                ts.setNanos(in.readInt());
+                return ts;
+            case 'd':
+                return new java.sql.Date(in.readLong());
+            case 't':
+                return new Timestamp(in.readLong());
+            default:
+                throw new IOException("unknown value tag " + tag);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.metrics.Instrumentation;
+import org.chobit.ar4j.core.metrics.Operation;
+import org.chobit.ar4j.core.metrics.Sample;
+
+/**
+ * 记录一次Model操作各阶段的耗时。ArConfig未注册Instrumentation时使用NOOP，所有方法直接返回。
+ * <p>
+ * 各阶段按先后顺序计时，每次计时记录自上一次计时以来的耗时。同一个Probe只能在一个线程中使用。
+ */
+final class Probe {
+
+    static final Probe NOOP = new Probe(null, null, null);
+
+    private final Instrumentation instrumentation;
+
+    private final Class<?> modelClass;
+
+    private final Operation operation;
+
+    private Object context;
+
+    private long start;
+
+    private long last;
+
+    private long connectNanos;
+
+    private long executeNanos;
+
+    private long mapNanos;
+
+    private long rows;
+
+    private Probe(Instrumentation instrumentation, Class<?> modelClass, Operation operation) {
+        this.instrumentation = instrumentation;
+        this.modelClass = modelClass;
+        this.operation = operation;
+    }
+
+
+    static Probe start(ModelMeta meta, Operation operation) {
+        Instrumentation ins = meta.getConfig().getInstrumentation();
+        if (null == ins) {
+            return NOOP;
+        }
+        Probe probe = new Probe(ins, meta.getModelClass(), operation);
+        probe.context = ins.start(probe.modelClass, operation);
+        probe.start = probe.last = System.nanoTime();
+        return probe;
+    }
+
+
+    /**
+     * 创建在其他线程中使用的Probe，结束后通过merge()合并到当前Probe
+     */
+    Probe fork() {
+        if (null == instrumentation) {
+            return NOOP;
+        }
+        Probe child = new Probe(instrumentation, modelClass, operation);
+        child.start = child.last = System.nanoTime();
+        return child;
+    }
+
+
+    void merge(Probe child) {
+        if (null == instrumentation || null == child) {
+            return;
+        }
+        this.connectNanos += child.connectNanos;
+        this.executeNanos += child.executeNanos;
+        this.mapNanos += child.mapNanos;
+        this.rows += child.rows;
+    }
+
+
+    /**
+     * 开始计时下一阶段，之前的耗时不计入任何阶段
+     */
+    void mark() {
+        if (null == instrumentation) {
+            return;
+        }
+        this.last = System.nanoTime();
+    }
+
+
+    void connected() {
+        if (null == instrumentation) {
+            return;
+        }
+        long now = System.nanoTime();
+        this.connectNanos += now - this.last;
+        this.last = now;
+    }
+
+
+    void executed() {
+        if (null == instrumentation) {
+            return;
+        }
+        long now = System.nanoTime();
+        this.executeNanos += now - this.last;
+        this.last = now;
+    }
+
+
+    void mapped(int rows) {
+        if (null == instrumentation) {
+            return;
+        }
+        long now = System.nanoTime();
+        this.mapNanos += now - this.last;
+        this.last = now;
+        this.rows += rows;
+    }
+
+
+    void rows(long rows) {
+        if (null == instrumentation) {
+            return;
+        }
+        this.rows += rows;
+    }
+
+
+    void end(Throwable error) {
+        if (null == instrumentation) {
+            return;
+        }
+        Sample sample = new Sample(System.nanoTime() - start, connectNanos, executeNanos, mapNanos, rows, error);
+        instrumentation.end(context, modelClass, operation, sample);
+    }
+
+
+    static void cache(ModelMeta meta, Operation operation, boolean hit) {
+        Instrumentation ins = meta.getConfig().getInstrumentation();
+        if (null != ins) {
+            ins.cache(meta.getModelClass(), operation, hit);
+        }
+    }
+}
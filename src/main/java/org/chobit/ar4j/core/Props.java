@@ -0,0 +1,362 @@
+package org.chobit.ar4j.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Model的属性存储。表中已注册的列按槽位保存在数组中，其他临时的label保存在TreeMap中。
+ * 遍历时按列名排序，与原先使用TreeMap保存属性时的顺序一致。
+ * <p>
+ * 通过put()和setAt()写入的属性会被标记为已修改，从结果集加载的属性不会。
+ */
+final class Props extends AbstractMap<String, Object> {
+
+    /**
+     * 用于区分"未设置"和"设置为null"
+     */
+    private static final Object NULL = new Object();
+
+    private final Layout layout;
+
+    private final Object[] values;
+
+    private TreeMap<String, Object> extra;
+
+    private int size;
+
+    private BitSet dirtySlots;
+
+    private Set<String> dirtyExtra;
+
+    Props(Layout layout) {
+        this.layout = null == layout ? Layout.EMPTY : layout;
+        this.values = new Object[this.layout.names.length];
+    }
+
+
+    Layout getLayout() {
+        return this.layout;
+    }
+
+
+    Object getAt(int slot) {
+        Object v = values[slot];
+        return v == NULL ? null : v;
+    }
+
+
+    void setAt(int slot, Object value) {
+        loadAt(slot, value);
+        if (null == dirtySlots) {
+            dirtySlots = new BitSet(values.length);
+        }
+        dirtySlots.set(slot);
+    }
+
+
+    /**
+     * 写入从数据库读取的值，不标记为已修改
+     */
+    void loadAt(int slot, Object value) {
+        if (null == values[slot]) {
+            size++;
+        }
+        values[slot] = null == value ? NULL : value;
+    }
+
+
+    /**
+     * 写入从数据库读取的值，不标记为已修改
+     */
+    void load(String key, Object value) {
+        Integer slot = layout.indexes.get(key);
+        if (null != slot) {
+            loadAt(slot, value);
+        } else {
+            putExtra(key, value);
+        }
+    }
+
+
+    @Override
+    public Object get(Object key) {
+        Integer slot = layout.indexes.get(key);
+        if (null != slot) {
+            return getAt(slot);
+        }
+        return null == extra ? null : extra.get(key);
+    }
+
+
+    @Override
+    public boolean containsKey(Object key) {
+        Integer slot = layout.indexes.get(key);
+        if (null != slot) {
+            return null != values[slot];
+        }
+        return null != extra && extra.containsKey(key);
+    }
+
+
+    @Override
+    public Object put(String key, Object value) {
+        Integer slot = layout.indexes.get(key);
+        if (null != slot) {
+            Object prev = getAt(slot);
+            setAt(slot, value);
+            return prev;
+        }
+        if (null == dirtyExtra) {
+            dirtyExtra = new HashSet<String>();
+        }
+        dirtyExtra.add(key);
+        return putExtra(key, value);
+    }
+
+
+    private Object putExtra(String key, Object value) {
+        if (null == extra) {
+            extra = new TreeMap<String, Object>();
+        }
+        if (!extra.containsKey(key)) {
+            size++;
+        }
+        return extra.put(key, value);
+    }
+
+
+    @Override
+    public Object remove(Object key) {
+        Integer slot = layout.indexes.get(key);
+        if (null != slot) {
+            Object prev = getAt(slot);
+            if (null != values[slot]) {
+                values[slot] = null;
+                size--;
+            }
+            if (null != dirtySlots) {
+                dirtySlots.clear(slot);
+            }
+            return prev;
+        }
+        if (null != extra && extra.containsKey(key)) {
+            size--;
+            if (null != dirtyExtra) {
+                dirtyExtra.remove(key);
+            }
+            return extra.remove(key);
+        }
+        return null;
+    }
+
+
+    /**
+     * 是否有加载或上次保存后修改过的属性
+     */
+    boolean isDirty() {
+        return (null != dirtySlots && !dirtySlots.isEmpty()) || (null != dirtyExtra && !dirtyExtra.isEmpty());
+    }
+
+
+    /**
+     * 按遍历顺序返回修改过的属性名，不包括exclude
+     */
+    String[] dirtyKeyArray(String exclude) {
+        if (!isDirty()) {
+            return new String[0];
+        }
+        List<String> keys = new ArrayList<String>();
+        Cursor c = new Cursor();
+        while (c.advance()) {
+            if (c.isDirty() && !c.key.equals(exclude)) {
+                keys.add(c.key);
+            }
+        }
+        return keys.toArray(new String[keys.size()]);
+    }
+
+
+    void clearDirty() {
+        if (null != dirtySlots) {
+            dirtySlots.clear();
+        }
+        if (null != dirtyExtra) {
+            dirtyExtra.clear();
+        }
+    }
+
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+
+    /**
+     * 按遍历顺序返回全部属性名
+     */
+    String[] keyArray() {
+        String[] keys = new String[size];
+        Cursor c = new Cursor();
+        for (int i = 0; c.advance(); i++) {
+            keys[i] = c.key;
+        }
+        return keys;
+    }
+
+
+    /**
+     * 按遍历顺序返回全部属性值
+     */
+    Object[] valueArray() {
+        Object[] result = new Object[size];
+        Cursor c = new Cursor();
+        for (int i = 0; c.advance(); i++) {
+            result[i] = c.value;
+        }
+        return result;
+    }
+
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+
+                    private final Cursor c = new Cursor();
+
+                    private boolean ready;
+
+                    private boolean hasNext;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (!ready) {
+                            hasNext = c.advance();
+                            ready = true;
+                        }
+                        return hasNext;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        ready = false;
+                        return new SimpleImmutableEntry<String, Object>(c.key, c.value);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+
+    /**
+     * 合并遍历槽位中的属性和临时属性，二者都按列名排序
+     */
+    private final class Cursor {
+
+        private int slot = -1;
+
+        private final Iterator<Entry<String, Object>> extraItr =
+                null == extra ? Collections.<Entry<String, Object>>emptyIterator() : extra.entrySet().iterator();
+
+        private Entry<String, Object> pendingExtra;
+
+        private boolean inSlot;
+
+        String key;
+
+        Object value;
+
+        boolean advance() {
+            int next = slot + 1;
+            while (next < values.length && null == values[next]) {
+                next++;
+            }
+            if (null == pendingExtra && extraItr.hasNext()) {
+                pendingExtra = extraItr.next();
+            }
+            boolean hasSlot = next < values.length;
+            if (!hasSlot && null == pendingExtra) {
+                return false;
+            }
+            if (hasSlot && (null == pendingExtra || layout.names[next].compareTo(pendingExtra.getKey()) < 0)) {
+                slot = next;
+                inSlot = true;
+                key = layout.names[next];
+                value = getAt(next);
+            } else {
+                inSlot = false;
+                key = pendingExtra.getKey();
+                value = pendingExtra.getValue();
+                pendingExtra = null;
+            }
+            return true;
+        }
+
+        boolean isDirty() {
+            if (inSlot) {
+                return null != dirtySlots && dirtySlots.get(slot);
+            }
+            return null != dirtyExtra && dirtyExtra.contains(key);
+        }
+    }
+
+
+    /**
+     * 表的列布局，为每个列分配固定的槽位，槽位按列名排序
+     */
+    static final class Layout {
+
+        static final Layout EMPTY = new Layout(new String[0]);
+
+        private final String[] names;
+
+        private final Map<String, Integer> indexes;
+
+        Layout(String[] sortedNames) {
+            this.names = sortedNames;
+            this.indexes = new HashMap<String, Integer>(sortedNames.length * 2);
+            for (int i = 0; i < sortedNames.length; i++) {
+                this.indexes.put(sortedNames[i], i);
+            }
+        }
+
+        String[] getNames() {
+            return names;
+        }
+
+        /**
+         * 返回列的槽位，不存在时返回-1
+         */
+        int indexOf(String column) {
+            Integer slot = indexes.get(column);
+            return null == slot ? -1 : slot;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.datasource.DataSourcePlugin;
+import org.chobit.ar4j.core.datasource.Replica;
+import org.chobit.ar4j.core.datasource.ReplicaBalancer;
+import org.chobit.ar4j.core.datasource.RoundRobinBalancer;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ArConfig的只读副本。读操作的连接由ReplicaBalancer从未被移出的副本中选择，
+ * 获取连接失败或出现连接类错误(SQLState以08开头)连续达到阈值的副本会被移出一段时间，到期后重新参与选择。
+ */
+final class ReplicaSet {
+
+    private final List<Node> nodes;
+
+    private volatile ReplicaBalancer balancer = new RoundRobinBalancer();
+
+    private volatile int failureThreshold = 3;
+
+    private volatile long ejectNanos = TimeUnit.SECONDS.toNanos(30);
+
+    ReplicaSet(List<DataSourcePlugin> plugins) {
+        List<Node> list = new ArrayList<Node>(plugins.size());
+        for (DataSourcePlugin plugin : plugins) {
+            if (null == plugin) {
+                throw new IllegalArgumentException("replica cannot be null");
+            }
+            list.add(new Node(list.size(), plugin));
+        }
+        this.nodes = Collections.unmodifiableList(list);
+    }
+
+
+    List<? extends Replica> getReplicas() {
+        return this.nodes;
+    }
+
+
+    void setBalancer(ReplicaBalancer balancer) {
+        this.balancer = balancer;
+    }
+
+
+    void setEjection(int failureThreshold, long ejectNanos) {
+        this.failureThreshold = failureThreshold;
+        this.ejectNanos = ejectNanos;
+    }
+
+
+    /**
+     * 从副本获取连接，选中的副本获取连接失败时尝试其他副本。没有可用的副本时返回null，由调用方改用主库
+     */
+    Connection getConnection() {
+        List<Node> candidates = available();
+        while (!candidates.isEmpty()) {
+            Node node = chosen(candidates, balancer.choose(Collections.unmodifiableList(candidates)));
+            try {
+                DataSource ds = node.getDataSource();
+                Connection conn = ds.getConnection();
+                node.outstanding.incrementAndGet();
+                return wrap(node, conn);
+            } catch (Exception e) {
+                node.failed(failureThreshold, ejectNanos);
+                candidates.remove(node);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 按序号找到ReplicaBalancer选中的副本，选中的不是候选副本时使用第一个候选副本
+     */
+    private static Node chosen(List<Node> candidates, Replica replica) {
+        if (null != replica) {
+            for (Node n : candidates) {
+                if (n.getIndex() == replica.getIndex()) {
+                    return n;
+                }
+            }
+        }
+        return candidates.get(0);
+    }
+
+
+    private List<Node> available() {
+        List<Node> list = new ArrayList<Node>(nodes.size());
+        long now = System.nanoTime();
+        for (Node n : nodes) {
+            if (!n.isEjected(now)) {
+                list.add(n);
+            }
+        }
+        return list;
+    }
+
+
+    /**
+     * 读操作出错时调用，conn来自副本且错误属于连接类错误时计入副本的失败次数
+     */
+    void reportFailure(Connection conn, Throwable error) {
+        if (null == conn || !Proxy.isProxyClass(conn.getClass())) {
+            return;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(conn);
+        if (!(handler instanceof Lease) || !isConnectionError(error)) {
+            return;
+        }
+        Lease lease = (Lease) handler;
+        lease.failed = true;
+        lease.node.failed(failureThreshold, ejectNanos);
+    }
+
+
+    private static boolean isConnectionError(Throwable error) {
+        for (Throwable t = error; null != t; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (null != state && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private static Connection wrap(Node node, Connection conn) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class[]{Connection.class}, new Lease(node, conn));
+    }
+
+
+    private static final class Node implements Replica {
+
+        private final int index;
+
+        private final DataSourcePlugin plugin;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private volatile long ejectedUntil;
+
+        private volatile boolean ejected;
+
+        Node(int index, DataSourcePlugin plugin) {
+            this.index = index;
+            this.plugin = plugin;
+        }
+
+        @Override
+        public int getIndex() {
+            return this.index;
+        }
+
+        @Override
+        public DataSource getDataSource() {
+            return this.plugin.getDataSource();
+        }
+
+        @Override
+        public int getOutstanding() {
+            return this.outstanding.get();
+        }
+
+        @Override
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        boolean isEjected(long now) {
+            return this.ejected && now - this.ejectedUntil < 0;
+        }
+
+        void failed(int threshold, long ejectNanos) {
+            if (failures.incrementAndGet() >= threshold) {
+                // 到期后再次失败会立即被移出，直到有一次读操作成功
+                this.ejectedUntil = System.nanoTime() + ejectNanos;
+                this.ejected = true;
+            }
+        }
+
+        void succeeded() {
+            if (0 != failures.get()) {
+                failures.set(0);
+                this.ejected = false;
+            }
+        }
+    }
+
+
+    /**
+     * 从副本获取的连接，关闭时减少副本的未关闭连接数，未出错时清除副本的失败次数
+     */
+    private static final class Lease implements InvocationHandler {
+
+        private final Node node;
+
+        private final Connection target;
+
+        private boolean closed;
+
+        private volatile boolean failed;
+
+        Lease(Node node, Connection target) {
+            this.node = node;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("equals".equals(name) && null != args && 1 == args.length) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name) && null == args) {
+                return System.identityHashCode(proxy);
+            }
+            if ("close".equals(name) && null == args) {
+                if (!closed) {
+                    closed = true;
+                    node.outstanding.decrementAndGet();
+                    if (!failed) {
+                        node.succeeded();
+                    }
+                }
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
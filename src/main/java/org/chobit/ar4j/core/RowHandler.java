@@ -0,0 +1,16 @@
+package org.chobit.ar4j.core;
+
+
+/**
+ * 流式查询时逐行处理记录
+ *
+ * @param <M> Model类型
+ */
+public interface RowHandler<M extends Model> {
+
+    /**
+     * 处理一行记录，返回false时停止读取后续记录
+     */
+    boolean handle(M m);
+
+}
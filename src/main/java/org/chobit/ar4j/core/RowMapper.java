@@ -0,0 +1,262 @@
+package org.chobit.ar4j.core;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 结果集映射器。按(Model类, 结果集结构)构建一次，缓存列序号和每列的读取方式，之后按序号读取数据
+ */
+final class RowMapper {
+
+    private final Class<? extends Model> modelClass;
+
+    private final String[] labels;
+
+    private final int[] indexes;
+
+    private final ColumnReader[] readers;
+
+    private final Props.Layout layout;
+
+    private final int[] slots;
+
+    private RowMapper(Class<? extends Model> modelClass, String[] labels, int[] indexes, ColumnReader[] readers, Props.Layout layout) {
+        this.modelClass = modelClass;
+        this.labels = labels;
+        this.indexes = indexes;
+        this.readers = readers;
+        this.layout = layout;
+        this.slots = new int[labels.length];
+        for (int j = 0; j < labels.length; j++) {
+            this.slots[j] = layout.indexOf(labels[j]);
+        }
+    }
+
+
+    /**
+     * 获取结果集对应的映射器，相同结构的结果集复用同一个映射器
+     */
+    static RowMapper of(Table table, ResultSetMetaData meta) throws SQLException {
+        int columnCount = meta.getColumnCount();
+        String[] shape = new String[columnCount * 2];
+        for (int i = 0; i < columnCount; i++) {
+            shape[i * 2] = meta.getColumnLabel(i + 1);
+            shape[i * 2 + 1] = meta.getColumnClassName(i + 1);
+        }
+        Shape key = new Shape(shape);
+        RowMapper mapper = table.getRowMapper(key);
+        if (null == mapper) {
+            mapper = table.putRowMapper(key, compile(table, shape));
+        }
+        return mapper;
+    }
+
+
+    private static RowMapper compile(Table table, String[] shape) {
+        Map<String, Integer> label2Index = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < shape.length / 2; i++) {
+            String label = shape[i * 2];
+            // 与按列名读取时一致，同名列只取第一列
+            if (!label2Index.containsKey(label)) {
+                label2Index.put(label, i);
+            }
+        }
+        int size = label2Index.size();
+        String[] labels = new String[size];
+        int[] indexes = new int[size];
+        ColumnReader[] readers = new ColumnReader[size];
+        int j = 0;
+        for (Map.Entry<String, Integer> e : label2Index.entrySet()) {
+            int i = e.getValue();
+            labels[j] = e.getKey();
+            indexes[j] = i + 1;
+            Class clazz = table.getColumnClass(e.getKey());
+            // 只有表元数据与结果集的列类型一致时才使用类型化的读取方式，否则退回getObject
+            if (null != clazz && clazz.getName().equals(shape[i * 2 + 1])) {
+                readers[j] = ColumnReader.of(clazz);
+            } else {
+                readers[j] = ColumnReader.OBJECT;
+            }
+            j++;
+        }
+        return new RowMapper(table.getModelClass(), labels, indexes, readers, table.getLayout());
+    }
+
+
+    /**
+     * 将结果集的当前行映射为Model实例
+     */
+    <M extends Model> M map(ResultSet rs) throws SQLException, IllegalAccessException, InstantiationException {
+        Model<?> m = modelClass.newInstance();
+        Props props = m.getProps();
+        // 列布局一致时直接按槽位写入
+        boolean bySlot = props.getLayout() == this.layout;
+        for (int j = 0; j < labels.length; j++) {
+            Object value = readers[j].read(rs, indexes[j]);
+            if (bySlot && slots[j] >= 0) {
+                props.loadAt(slots[j], value);
+            } else {
+                props.load(labels[j], value);
+            }
+        }
+        return (M) m;
+    }
+
+
+    /**
+     * 按列类型读取结果集中的值
+     */
+    abstract static class ColumnReader {
+
+        abstract Object read(ResultSet rs, int index) throws SQLException;
+
+        static final ColumnReader OBJECT = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getObject(index);
+            }
+        };
+
+        static final ColumnReader STRING = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getString(index);
+            }
+        };
+
+        static final ColumnReader INTEGER = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                int v = rs.getInt(index);
+                return rs.wasNull() ? null : v;
+            }
+        };
+
+        static final ColumnReader LONG = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                long v = rs.getLong(index);
+                return rs.wasNull() ? null : v;
+            }
+        };
+
+        static final ColumnReader DOUBLE = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                double v = rs.getDouble(index);
+                return rs.wasNull() ? null : v;
+            }
+        };
+
+        static final ColumnReader FLOAT = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                float v = rs.getFloat(index);
+                return rs.wasNull() ? null : v;
+            }
+        };
+
+        static final ColumnReader BOOLEAN = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                boolean v = rs.getBoolean(index);
+                return rs.wasNull() ? null : v;
+            }
+        };
+
+        static final ColumnReader BIG_DECIMAL = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getBigDecimal(index);
+            }
+        };
+
+        static final ColumnReader TIMESTAMP = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getTimestamp(index);
+            }
+        };
+
+        static final ColumnReader DATE = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getDate(index);
+            }
+        };
+
+        static final ColumnReader TIME = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getTime(index);
+            }
+        };
+
+        static final ColumnReader BYTES = new ColumnReader() {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getBytes(index);
+            }
+        };
+
+        private static final Map<Class, ColumnReader> READERS = new HashMap<Class, ColumnReader>();
+
+        static {
+            READERS.put(String.class, STRING);
+            READERS.put(Integer.class, INTEGER);
+            READERS.put(Long.class, LONG);
+            READERS.put(Double.class, DOUBLE);
+            READERS.put(Float.class, FLOAT);
+            READERS.put(Boolean.class, BOOLEAN);
+            READERS.put(BigDecimal.class, BIG_DECIMAL);
+            READERS.put(java.sql.Timestamp.class, TIMESTAMP);
+            READERS.put(java.sql.Date.class, DATE);
+            READERS.put(java.sql.Time.class, TIME);
+            READERS.put(byte[].class, BYTES);
+        }
+
+        static ColumnReader of(Class clazz) {
+            ColumnReader reader = READERS.get(clazz);
+            return null == reader ? OBJECT : reader;
+        }
+    }
+
+
+    /**
+     * 结果集结构，由各列的label和类型组成
+     */
+    static final class Shape {
+
+        private final String[] columns;
+
+        private final int hash;
+
+        Shape(String[] columns) {
+            this.columns = columns;
+            this.hash = Arrays.hashCode(columns);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) o;
+            return this.hash == other.hash && Arrays.equals(this.columns, other.columns);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.chobit.ar4j.core;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * 批量加载表的列信息，以及列信息快照文件的读写
+ */
+final class SchemaLoader {
+
+    /**
+     * 通过DatabaseMetaData一次读取当前库中全部表的列信息。
+     *
+     * @param tables 表名(小写)与Table的对应关系
+     * @return 找到的表及其列信息，未找到的表不在结果中
+     */
+    static Map<Table, Map<String, Class>> load(DataSource dataSource, Map<String, Table> tables) throws SQLException {
+        Map<Table, Map<String, Class>> result = new HashMap<Table, Map<String, Class>>();
+        Connection conn = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            DatabaseMetaData meta = conn.getMetaData();
+            rs = meta.getColumns(conn.getCatalog(), schemaOf(conn), "%", "%");
+            while (rs.next()) {
+                Table table = tables.get(rs.getString("TABLE_NAME").toLowerCase());
+                if (null == table) {
+                    continue;
+                }
+                Map<String, Class> columns = result.get(table);
+                if (null == columns) {
+                    columns = new HashMap<String, Class>();
+                    result.put(table, columns);
+                }
+                columns.put(rs.getString("COLUMN_NAME"), toClass(rs.getInt("DATA_TYPE"), rs.getString("TYPE_NAME")));
+            }
+            return result;
+        } finally {
+            ArHelper.closeResultSet(rs);
+            ArHelper.closeConnection(conn);
+        }
+    }
+
+
+    /**
+     * 将表的列信息写入快照文件，文件中每行为"表标识=列名:类名,列名:类名"
+     */
+    static void save(File file, Map<String, Map<String, Class>> schema) throws IOException {
+        Properties props = new Properties();
+        for (Map.Entry<String, Map<String, Class>> e : schema.entrySet()) {
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String, Class> c : new TreeMap<String, Class>(e.getValue()).entrySet()) {
+                if (builder.length() > 0) {
+                    builder.append(',');
+                }
+                builder.append(c.getKey()).append(':').append(c.getValue().getName());
+            }
+            props.setProperty(e.getKey(), builder.toString());
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            props.store(out, "ar4j schema snapshot");
+        } finally {
+            out.close();
+        }
+    }
+
+
+    /**
+     * 读取快照文件，返回表标识与列信息的对应关系
+     */
+    static Map<String, Map<String, Class>> read(File file) throws IOException, ClassNotFoundException {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        Map<String, Map<String, Class>> schema = new HashMap<String, Map<String, Class>>();
+        for (String tableFlag : props.stringPropertyNames()) {
+            Map<String, Class> columns = new HashMap<String, Class>();
+            for (String column : props.getProperty(tableFlag).split(",")) {
+                int idx = column.lastIndexOf(':');
+                if (idx <= 0) {
+                    continue;
+                }
+                columns.put(column.substring(0, idx), Class.forName(column.substring(idx + 1)));
+            }
+            schema.put(tableFlag, columns);
+        }
+        return schema;
+    }
+
+
+    private static String schemaOf(Connection conn) {
+        try {
+            return conn.getSchema();
+        } catch (AbstractMethodError e) {
+            // JDBC 4.1之前的驱动
+            return null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * 将JDBC类型转换为Java类，与常见驱动的ResultSetMetaData.getColumnClassName()保持一致
+     */
+    private static Class toClass(int type, String typeName) {
+        boolean unsigned = null != typeName && typeName.toUpperCase().contains("UNSIGNED");
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return Boolean.class;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return Integer.class;
+            case Types.INTEGER:
+                return unsigned ? Long.class : Integer.class;
+            case Types.BIGINT:
+                return unsigned ? BigInteger.class : Long.class;
+            case Types.REAL:
+                return Float.class;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return Double.class;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return BigDecimal.class;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return String.class;
+            case Types.DATE:
+                return java.sql.Date.class;
+            case Types.TIME:
+                return java.sql.Time.class;
+            case Types.TIMESTAMP:
+                return java.sql.Timestamp.class;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return byte[].class;
+            default:
+                return Object.class;
+        }
+    }
+
+
+    private SchemaLoader() {
+        throw new UnsupportedOperationException("Private constructor, cannot be accessed.");
+    }
+}
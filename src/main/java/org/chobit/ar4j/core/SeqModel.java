@@ -2,12 +2,27 @@ package org.chobit.ar4j.core;
 
 
 import org.chobit.ar4j.core.cache.Cache;
-import org.chobit.ar4j.core.dialect.Dialect;
 import org.chobit.ar4j.core.exception.ArException;
+import org.chobit.ar4j.core.exception.ArSQLException;
+import org.chobit.ar4j.core.metrics.Operation;
 
+import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 用来适配分表场景
@@ -15,69 +30,544 @@ import java.util.Set;
 public abstract class SeqModel<M extends SeqModel> extends Model<M> {
 
 
-    private String tableName = getTableName();
+    /**
+     * 创建时确定的表名。注册过程中加载列信息时会在发布元数据之前创建实例，此时表名留空，由getTableName()按需计算
+     */
+    private String tableName = null == Ar.findMeta(getClass()) ? null : getTableName();
 
     public abstract String latestSuffix();
 
     public abstract String suffixRegex();
 
-    protected List<M> findInSeq(Cache cache, String key, String sqlSelect, String sqlWhere, Object... params) {
-        List<M> result = cache.get(key);
-        if (null != result) {
+    /**
+     * 将分表后缀转换为可排序的后缀键，供SuffixFilter判断是否需要查询该分表。
+     * 默认直接使用后缀字符串，按日期、数字等后缀分表时可以覆盖该方法，如返回Integer.valueOf(suffix)
+     */
+    protected Comparable suffixKey(String suffix) {
+        return suffix;
+    }
+
+    /**
+     * 返回记录应写入的分表后缀，save()、batchSave()和upsert()等写入方法据此选择分表。默认返回null，写入最新的分表。
+     * 补写历史数据时可以覆盖该方法，如按记录的时间返回对应的后缀
+     */
+    protected String suffixOf(M m) {
+        return null;
+    }
+
+
+    @Override
+    public boolean save() {
+        String suffix = suffixOf((M) this);
+        if (null != suffix) {
+            setTableName(Ar.getTableFlag(getClass()) + suffix);
+        }
+        return super.save();
+    }
+
+
+    @Override
+    public boolean upsert() {
+        String suffix = suffixOf((M) this);
+        if (null != suffix) {
+            setTableName(Ar.getTableFlag(getClass()) + suffix);
+        }
+        return super.upsert();
+    }
+
+
+    /**
+     * 按suffixOf()将记录分组，每个分表执行一次分批写入。ArConfig开启了setSeqParallelWrites()时各分表并行写入，
+     * 分表之间不保证原子性，某个分表写入失败时其他分表的写入不会回滚
+     */
+    @Override
+    public void batchSave(Collection<M> models) {
+        if (null == models || models.isEmpty()) {
+            return;
+        }
+        Map<String, List<M>> groups = groupByTable(models);
+        ArConfig config = Ar.requireConfig(getClass());
+        if (groups.size() > 1 && config.isSeqParallelWrites() && null == Transaction.current(config)) {
+            batchSaveParallel(config, groups);
+        } else {
+            for (Map.Entry<String, List<M>> e : groups.entrySet()) {
+                batchSave(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, List<M>> e : groups.entrySet()) {
+            for (M m : e.getValue()) {
+                m.setTableName(e.getKey());
+            }
+        }
+    }
+
+
+    /**
+     * 按suffixOf()将记录分组，依次在各分表执行批量upsert
+     */
+    @Override
+    public void batchUpsert(Collection<M> models) {
+        if (null == models || models.isEmpty()) {
+            return;
+        }
+        Map<String, List<M>> groups = groupByTable(models);
+        for (Map.Entry<String, List<M>> e : groups.entrySet()) {
+            batchUpsert(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, List<M>> e : groups.entrySet()) {
+            for (M m : e.getValue()) {
+                m.setTableName(e.getKey());
+            }
+        }
+    }
+
+
+    @Override
+    String tableOf(M m) {
+        String suffix = suffixOf(m);
+        return null == suffix ? getTableName() : Ar.getTableFlag(getClass()) + suffix;
+    }
+
+
+    private Map<String, List<M>> groupByTable(Collection<M> models) {
+        Map<String, List<M>> groups = new LinkedHashMap<String, List<M>>();
+        for (M m : models) {
+            String table = tableOf(m);
+            List<M> group = groups.get(table);
+            if (null == group) {
+                group = new ArrayList<M>();
+                groups.put(table, group);
+            }
+            group.add(m);
+        }
+        return groups;
+    }
+
+
+    /**
+     * 在分表并行查询的线程池中写入各分表，同时写入的分表数不超过seqParallelism。等待全部分表写入结束后抛出第一个错误
+     */
+    private void batchSaveParallel(ArConfig config, Map<String, List<M>> groups) {
+        CompletionService<Void> cs = new ExecutorCompletionService<Void>(config.getSeqExecutor());
+        List<Map.Entry<String, List<M>>> entries = new ArrayList<Map.Entry<String, List<M>>>(groups.entrySet());
+        int n = entries.size();
+        int parallelism = config.getSeqParallelism();
+        RuntimeException error = null;
+        int submitted = 0;
+        for (int done = 0; done < submitted || submitted < n; done++) {
+            while (submitted < n && submitted - done < parallelism) {
+                final Map.Entry<String, List<M>> e = entries.get(submitted++);
+                cs.submit(config.inheritPrimaryReads(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        batchSave(e.getKey(), e.getValue());
+                        return null;
+                    }
+                }));
+            }
+            try {
+                cs.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ArException("batch insert into seq tables interrupted.", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                RuntimeException ex = cause instanceof RuntimeException ? (RuntimeException) cause
+                        : new ArException("batch insert into seq tables error.", cause);
+                if (null == error) {
+                    error = ex;
+                } else {
+                    error.addSuppressed(ex);
+                }
+            }
+        }
+        if (null != error) {
+            throw error;
+        }
+    }
+
+    protected List<M> findInSeq(Cache cache, String key, final String sqlSelect, final String sqlWhere, final Object... params) {
+        return SingleFlight.load(getClass(), Operation.FIND_IN_SEQ, cache, key, new Callable<List<M>>() {
+            @Override
+            public List<M> call() {
+                return findInSeq(sqlSelect, sqlWhere, params);
+            }
+        });
+    }
+
+    protected List<M> findInSeq(String sqlSelect, String sqlWhere, Object... params) {
+        return findInSeq((SuffixFilter) null, sqlSelect, sqlWhere, params);
+    }
+
+
+    /**
+     * 只查询后缀键满足filter的分表，filter为null时查询全部分表
+     */
+    protected List<M> findInSeq(SuffixFilter filter, String sqlSelect, String sqlWhere, Object... params) {
+        List<String> tables = findTableNames(filter);
+        ModelMeta meta = Ar.getMeta(getClass());
+        Probe probe = Probe.start(meta, Operation.FIND_IN_SEQ);
+        Throwable error = null;
+        try {
+            List<M> result = new ArrayList<M>();
+            for (List<M> part : findInTables(meta, probe, tables, sqlSelect, sqlWhere, null, params)) {
+                result.addAll(part);
+            }
             return result;
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            probe.end(error);
+        }
+    }
+
+
+    /**
+     * 跨分表查询按orderBy排序的前limit条记录，见findTopInSeq(filter, sqlSelect, sqlWhere, orderBy, limit, params)
+     */
+    protected List<M> findTopInSeq(String sqlSelect, String sqlWhere, String orderBy, int limit, Object... params) {
+        return findTopInSeq((SuffixFilter) null, sqlSelect, sqlWhere, orderBy, limit, params);
+    }
+
+
+    /**
+     * 跨分表查询按orderBy排序的前limit条记录。每个分表只查询排序后的前limit条记录，再按orderBy归并，
+     * 内存中至多保存limit * 分表数条记录。
+     * <p>
+     * orderBy只支持"col1 desc, col2"形式的列名加asc/desc，排序列需要出现在sqlSelect中。
+     * 归并时在Java中比较列的值，null视为最小值，字符串按String.compareTo()比较
+     */
+    protected List<M> findTopInSeq(SuffixFilter filter, String sqlSelect, String sqlWhere, String orderBy, int limit, Object... params) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        SeqOrder order = SeqOrder.parse(orderBy);
+        List<String> tables = findTableNames(filter);
+        ModelMeta meta = Ar.getMeta(getClass());
+        Probe probe = Probe.start(meta, Operation.FIND_IN_SEQ);
+        Throwable error = null;
+        try {
+            Object[] all = Arrays.copyOf(params, params.length + 1);
+            all[params.length] = limit;
+            return merge(findInTables(meta, probe, tables, sqlSelect, sqlWhere, order.getClause(), all), order, limit);
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            probe.end(error);
+        }
+    }
+
+
+    /**
+     * 以最小堆归并各分表已排好序的结果，取得limit条记录后停止。排序相同的记录按分表从新到旧排列
+     */
+    private static <M extends SeqModel> List<M> merge(List<List<M>> parts, SeqOrder order, int limit) {
+        SeqOrder resolved = null;
+        for (List<M> part : parts) {
+            if (!part.isEmpty()) {
+                resolved = order.resolve(part.get(0));
+                break;
+            }
+        }
+        List<M> result = new ArrayList<M>(Math.min(limit, 1024));
+        if (null == resolved) {
+            return result;
+        }
+        final SeqOrder comparator = resolved;
+        PriorityQueue<Run<M>> heap = new PriorityQueue<Run<M>>(Math.max(1, parts.size()), new Comparator<Run<M>>() {
+            @Override
+            public int compare(Run<M> a, Run<M> b) {
+                int c = comparator.compare(a.head(), b.head());
+                return 0 != c ? c : a.index - b.index;
+            }
+        });
+        for (int i = 0; i < parts.size(); i++) {
+            if (!parts.get(i).isEmpty()) {
+                heap.add(new Run<M>(parts.get(i), i));
+            }
+        }
+        while (result.size() < limit && !heap.isEmpty()) {
+            Run<M> run = heap.poll();
+            result.add(run.head());
+            if (++run.pos < run.rows.size()) {
+                heap.add(run);
+            }
         }
-        result = findInSeq(sqlSelect, sqlWhere, params);
-        cache.put(key, result);
         return result;
     }
 
-    protected List<M> findInSeq(String sqlSelect, String sqlWhere, Object... params) {
-        Set<String> tables = findTableNames();
-        List<M> result = new ArrayList<M>();
+
+    /**
+     * 查询各分表，结果按分表从新到旧的顺序排列。orderBy不为null时每个分表的查询按orderBy排序，
+     * 并以params的最后一个参数限制记录数
+     */
+    private List<List<M>> findInTables(ModelMeta meta, Probe probe, List<String> tables,
+                                       String sqlSelect, String sqlWhere, String orderBy, Object... params) {
+        ArConfig config = meta.getConfig();
+        // 事务中的查询需要使用事务绑定的连接，不做并行查询
+        if (null != config.getSeqExecutor() && tables.size() > 1 && null == Transaction.current(config)) {
+            return findInTablesParallel(meta, probe, tables, sqlSelect, sqlWhere, orderBy, params);
+        }
+        List<List<M>> parts = new ArrayList<List<M>>(tables.size());
         for (String s : tables) {
-            String sql = sqlSelect + " from " + s + " where " + sqlWhere;
-            List<M> list = find(sql, params);
-            for (M m : list) {
-                m.setTableName(s);
-                result.add(m);
+            parts.add(findInTable(meta, probe, s, sqlSelect, sqlWhere, orderBy, params));
+        }
+        return parts;
+    }
+
+
+    private List<M> findInTable(ModelMeta meta, Probe probe, String table,
+                                String sqlSelect, String sqlWhere, String orderBy, Object... params) {
+        String sql = sqlSelect + " from " + table + " where " + sqlWhere;
+        if (null != orderBy) {
+            sql = ArHelper.limit(meta.getDialect(), sql + " order by " + orderBy);
+        }
+        List<M> list = find(meta, probe, sql, params);
+        for (M m : list) {
+            m.setTableName(table);
+        }
+        return list;
+    }
+
+
+    /**
+     * 异步执行findInSeq(sqlSelect, sqlWhere, params)，在ArConfig的异步执行器中执行
+     */
+    protected CompletableFuture<List<M>> findInSeqAsync(final String sqlSelect, final String sqlWhere, final Object... params) {
+        return Ar.requireConfig(getClass()).async(new Callable<List<M>>() {
+            @Override
+            public List<M> call() {
+                return findInSeq(sqlSelect, sqlWhere, params);
+            }
+        });
+    }
+
+
+    /**
+     * 将各分表的查询提交到ArConfig中配置的线程池并行执行，结果仍按分表从新到旧的顺序排列
+     */
+    private List<List<M>> findInTablesParallel(final ModelMeta meta, Probe probe, final List<String> tables, final String sqlSelect,
+                                               final String sqlWhere, final String orderBy, final Object... params) {
+        ArConfig config = meta.getConfig();
+        final int n = tables.size();
+        final List<List<M>> parts = new ArrayList<List<M>>(Collections.<List<M>>nCopies(n, null));
+        final Probe[] probes = new Probe[n];
+        CompletionService<Integer> cs = new ExecutorCompletionService<Integer>(config.getSeqExecutor());
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(n);
+        int parallelism = config.getSeqParallelism();
+        long timeout = config.getSeqTimeoutNanos();
+        long deadline = System.nanoTime() + timeout;
+        try {
+            int submitted = 0;
+            for (int done = 0; done < n; done++) {
+                while (submitted < n && submitted - done < parallelism) {
+                    final int index = submitted++;
+                    final Probe child = probe.fork();
+                    futures.add(cs.submit(config.inheritPrimaryReads(new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            parts.set(index, findInTable(meta, child, tables.get(index), sqlSelect, sqlWhere, orderBy, params));
+                            probes[index] = child;
+                            return index;
+                        }
+                    })));
+                }
+                Future<Integer> f;
+                if (timeout > 0) {
+                    f = cs.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (null == f) {
+                        throw new ArException("find in seq tables timeout.");
+                    }
+                } else {
+                    f = cs.take();
+                }
+                probe.merge(probes[f.get()]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ArException("find in seq tables interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new ArException("find in seq tables error.", e.getCause());
+        } finally {
+            for (Future<Integer> f : futures) {
+                f.cancel(true);
             }
         }
-        return result;
+        return parts;
     }
 
-    protected M findFirstInSeq(Cache cache, String key, String sqlSelect, String sqlWhere, Object... params) {
-        M m = cache.get(key);
-        if (null != m) {
-            return m;
+    /**
+     * 按分表从新到旧的顺序流式查询，各分表共用一个连接，handler返回false时停止查询
+     */
+    protected void scanInSeq(final RowHandler<M> handler, String sqlSelect, String sqlWhere, Object... params) {
+        List<String> tables = findTableNames();
+        Connection conn = null;
+        String sql = null;
+        ModelMeta meta = null;
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
+        try {
+            meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.SCAN);
+            conn = Ar.getReadConnection(meta);
+            probe.connected();
+            for (final String s : tables) {
+                sql = sqlSelect + " from " + s + " where " + sqlWhere;
+                boolean goon = scan(conn, meta, probe, new RowHandler<M>() {
+                    @Override
+                    public boolean handle(M m) {
+                        m.setTableName(s);
+                        return handler.handle(m);
+                    }
+                }, sql, params);
+                if (!goon) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            error = e;
+            Ar.readFailed(meta, conn, e);
+            throw e;
+        } catch (Exception e) {
+            error = e;
+            Ar.readFailed(meta, conn, e);
+            throw new ArSQLException(sql, e);
+        } finally {
+            ArHelper.closeConnection(conn);
+            probe.end(error);
         }
-        m = findFirstInSeq(sqlSelect, sqlWhere, params);
-        cache.put(key, m);
-        return m;
+    }
+
+    protected M findFirstInSeq(Cache cache, String key, final String sqlSelect, final String sqlWhere, final Object... params) {
+        return SingleFlight.load(getClass(), Operation.FIND_IN_SEQ, cache, key, new Callable<M>() {
+            @Override
+            public M call() {
+                return findFirstInSeq(sqlSelect, sqlWhere, params);
+            }
+        });
     }
 
     protected M findFirstInSeq(String sqlSelect, String sqlWhere, Object... params) {
-        Set<String> tables = findTableNames();
-        for (String s : tables) {
-            String sql = sqlSelect + " from " + s + " where " + sqlWhere;
-            M m = findFirst(sql, params);
-            if (null != m) {
-                m.setTableName(s);
-                return m;
+        return findFirstInSeq((SuffixFilter) null, sqlSelect, sqlWhere, params);
+    }
+
+
+    /**
+     * 按分表从新到旧的顺序，在后缀键满足filter的分表中查询第一条记录
+     */
+    protected M findFirstInSeq(SuffixFilter filter, String sqlSelect, String sqlWhere, Object... params) {
+        List<String> tables = findTableNames(filter);
+        ModelMeta meta = Ar.getMeta(getClass());
+        Probe probe = Probe.start(meta, Operation.FIND_IN_SEQ);
+        Throwable error = null;
+        try {
+            for (String s : tables) {
+                String sql = sqlSelect + " from " + s + " where " + sqlWhere;
+                List<M> list = find(meta, probe, sql, params);
+                if (!list.isEmpty()) {
+                    M m = list.get(0);
+                    m.setTableName(s);
+                    return m;
+                }
             }
+            return null;
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            probe.end(error);
+        }
+    }
+
+
+    /**
+     * 按主键分页查询各分表，见findPageInSeq(column, cursor, pageSize, sqlWhere, params)
+     */
+    public Page<M> findPageInSeq(String cursor, int pageSize) {
+        return findPageInSeq(null, cursor, pageSize, null);
+    }
+
+
+    /**
+     * 按分表从新到旧的顺序分页查询，每个分表内按column升序排列。一个分表的记录不足一页时继续查询下一个分表，
+     * 游标中记录了上一页最后一条记录所在的分表。游标所在的分表已被删除时，从比它旧的分表继续查询
+     */
+    protected Page<M> findPageInSeq(String column, String cursor, int pageSize, String sqlWhere, Object... params) {
+        List<String> tables = findTableNames();
+        Probe probe = Probe.NOOP;
+        Throwable error = null;
+        try {
+            ModelMeta meta = Ar.getMeta(getClass());
+            probe = Probe.start(meta, Operation.FIND_IN_SEQ);
+            String[] keys = ArHelper.pageKeys(meta.getTable(), column);
+            int size = ArHelper.pageSize(meta.getDialect(), pageSize);
+            PageCursor from = PageCursor.decode(cursor, keys);
+            int start = 0;
+            Object[] after = null;
+            if (null != from) {
+                if (null == from.getTableName()) {
+                    throw new ArException("page cursor was not created by findPageInSeq: " + cursor);
+                }
+                // 分表按表名从新到旧排列
+                while (start < tables.size() && tables.get(start).compareTo(from.getTableName()) > 0) {
+                    start++;
+                }
+                if (start < tables.size() && tables.get(start).equals(from.getTableName())) {
+                    after = from.getValues();
+                }
+            }
+            List<M> result = new ArrayList<M>(size + 1);
+            for (int i = start; i < tables.size() && result.size() <= size; i++) {
+                String s = tables.get(i);
+                for (M m : findPage(meta, probe, s, keys, after, size + 1 - result.size(), sqlWhere, params)) {
+                    m.setTableName(s);
+                    result.add(m);
+                }
+                after = null;
+            }
+            String next = null;
+            if (result.size() > size) {
+                result = result.subList(0, size);
+                M last = result.get(size - 1);
+                next = PageCursor.encode(last.getTableName(), last, keys);
+            }
+            return new Page<M>(result, next);
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            probe.end(error);
         }
-        return null;
     }
 
 
-    private Set<String> findTableNames() {
+    /**
+     * 后缀键满足filter的分表，filter为null时返回全部分表
+     */
+    private List<String> findTableNames(SuffixFilter filter) {
+        List<String> tables = findTableNames();
+        if (null == filter) {
+            return tables;
+        }
+        int prefix = Ar.getTableFlag(getClass()).length();
+        List<String> result = new ArrayList<String>();
+        for (String t : tables) {
+            if (filter.accept(suffixKey(t.substring(prefix)))) {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+
+    private List<String> findTableNames() {
         if (null == suffixRegex()) {
             throw new ArException("suffixRex() need to return a not null value.");
         }
         try {
-            Dialect dialect = Ar.getDialect(getClass());
-            String sql = dialect.sqlShowTables();
-            String suffixRegex = suffixRegex();
-            return ArHelper.findTableNames(getClass(), sql, suffixRegex);
+            return Ar.requireConfig(getClass()).getSeqTables(this);
         } catch (Exception e) {
             throw new ArException("find seq tableNames error...", e);
         }
@@ -95,4 +585,26 @@ public abstract class SeqModel<M extends SeqModel> extends Model<M> {
     void setTableName(String tableName) {
         this.tableName = tableName;
     }
+
+
+    /**
+     * 归并时一个分表的结果及当前位置
+     */
+    private static final class Run<M> {
+
+        private final List<M> rows;
+
+        private final int index;
+
+        private int pos;
+
+        Run(List<M> rows, int index) {
+            this.rows = rows;
+            this.index = index;
+        }
+
+        M head() {
+            return rows.get(pos);
+        }
+    }
 }
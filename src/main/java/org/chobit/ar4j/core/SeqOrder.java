@@ -0,0 +1,103 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.exception.ArException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 跨分表排序时使用的排序规则，由"col1 desc, col2"形式的order by子句解析而来，只支持列名加可选的asc/desc。
+ * <p>
+ * 比较时null视为最小值，与MySQL的排序方式一致；字符串按String.compareTo()比较，可能与数据库的排序规则不同，
+ * 建议使用数值或时间类型的列排序。
+ */
+final class SeqOrder implements Comparator<Model<?>> {
+
+    private static final Pattern COLUMN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String clause;
+
+    private final String[] columns;
+
+    private final boolean[] descending;
+
+    private SeqOrder(String clause, String[] columns, boolean[] descending) {
+        this.clause = clause;
+        this.columns = columns;
+        this.descending = descending;
+    }
+
+
+    static SeqOrder parse(String orderBy) {
+        if (null == orderBy || orderBy.trim().isEmpty()) {
+            throw new ArException("order by clause cannot be empty.");
+        }
+        String[] items = orderBy.split(",");
+        List<String> columns = new ArrayList<String>(items.length);
+        boolean[] descending = new boolean[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String[] tokens = items[i].trim().split("\\s+");
+            boolean valid = tokens.length == 1 || tokens.length == 2;
+            if (valid && tokens.length == 2) {
+                String direction = tokens[1].toLowerCase(Locale.ROOT);
+                valid = "asc".equals(direction) || "desc".equals(direction);
+                descending[i] = "desc".equals(direction);
+            }
+            if (!valid || !COLUMN.matcher(tokens[0]).matches()) {
+                throw new ArException("unsupported order by clause: " + orderBy);
+            }
+            columns.add(tokens[0]);
+        }
+        return new SeqOrder(orderBy.trim(), columns.toArray(new String[0]), descending);
+    }
+
+
+    String getClause() {
+        return this.clause;
+    }
+
+
+    /**
+     * 以结果中实际的列名代替order by子句中的列名，列名的大小写可能与数据库返回的不同
+     */
+    SeqOrder resolve(Model<?> sample) {
+        Props props = sample.getProps();
+        List<String> keys = new ArrayList<String>(Arrays.asList(props.getLayout().getNames()));
+        keys.addAll(Arrays.asList(props.keyArray()));
+        String[] resolved = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            resolved[i] = columns[i];
+            for (String key : keys) {
+                if (key.equalsIgnoreCase(columns[i])) {
+                    resolved[i] = key;
+                    break;
+                }
+            }
+        }
+        return new SeqOrder(clause, resolved, descending);
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compare(Model<?> a, Model<?> b) {
+        for (int i = 0; i < columns.length; i++) {
+            Comparable x = (Comparable) a.getObject(columns[i]);
+            Comparable y = (Comparable) b.getObject(columns[i]);
+            int c;
+            if (null == x || null == y) {
+                c = null == x ? (null == y ? 0 : -1) : 1;
+            } else {
+                c = x.compareTo(y);
+            }
+            if (0 != c) {
+                return descending[i] ? -c : c;
+            }
+        }
+        return 0;
+    }
+}
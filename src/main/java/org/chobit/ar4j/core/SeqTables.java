@@ -0,0 +1,56 @@
+package org.chobit.ar4j.core;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 分表目录，缓存SeqModel类对应的全部分表名，分表名按从新到旧排序
+ */
+final class SeqTables {
+
+    private final String suffixRegex;
+
+    private final Pattern pattern;
+
+    private volatile List<String> tables;
+
+    private volatile long loadTime;
+
+    private volatile String latestSuffix;
+
+    SeqTables(String tablePrefix, String suffixRegex) {
+        this.suffixRegex = suffixRegex;
+        this.pattern = Pattern.compile(tablePrefix + suffixRegex);
+    }
+
+    String getSuffixRegex() {
+        return this.suffixRegex;
+    }
+
+    Pattern getPattern() {
+        return this.pattern;
+    }
+
+    List<String> getTables() {
+        return this.tables;
+    }
+
+    /**
+     * 判断是否需要重新加载：尚未加载、超过有效期或者出现了新的最新后缀
+     */
+    boolean isStale(long ttlNanos, String latestSuffix) {
+        if (null == this.tables) {
+            return true;
+        }
+        if (ttlNanos > 0 && System.nanoTime() - this.loadTime > ttlNanos) {
+            return true;
+        }
+        return null != latestSuffix && !latestSuffix.equals(this.latestSuffix);
+    }
+
+    void update(List<String> tables, String latestSuffix) {
+        this.latestSuffix = latestSuffix;
+        this.loadTime = System.nanoTime();
+        this.tables = tables;
+    }
+}
@@ -0,0 +1,118 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.cache.Cache;
+import org.chobit.ar4j.core.exception.ArException;
+import org.chobit.ar4j.core.metrics.Operation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 缓存未命中时合并并发的加载请求，同一个Cache的同一个key同时只有一个线程访问数据库
+ */
+final class SingleFlight {
+
+    private static final ConcurrentMap<Key, FutureTask<Object>> flights = new ConcurrentHashMap<Key, FutureTask<Object>>();
+
+
+    static <T> T load(final Cache cache, final String key, final Callable<T> loader) {
+        T value = cache.get(key);
+        if (null != value) {
+            return value;
+        }
+        return fly(cache, key, loader);
+    }
+
+
+    /**
+     * 与load(cache, key, loader)相同，同时将缓存是否命中记录到Model类的监控中
+     */
+    static <T> T load(Class<? extends Model> modelClass, Operation operation,
+                      final Cache cache, final String key, final Callable<T> loader) {
+        ModelMeta meta = Ar.getMeta(modelClass);
+        if (null == meta.getConfig().getInstrumentation()) {
+            return load(cache, key, loader);
+        }
+        T value = cache.get(key);
+        Probe.cache(meta, operation, null != value);
+        if (null != value) {
+            return value;
+        }
+        return fly(cache, key, loader);
+    }
+
+
+    private static <T> T fly(final Cache cache, final String key, final Callable<T> loader) {
+        Key k = new Key(cache, key);
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                // 上一次加载可能刚刚完成
+                T v = cache.get(key);
+                if (null == v) {
+                    v = loader.call();
+                    if (null != v) {
+                        cache.put(key, v);
+                    }
+                }
+                return v;
+            }
+        });
+        FutureTask<Object> flight = flights.putIfAbsent(k, task);
+        if (null == flight) {
+            flight = task;
+            try {
+                task.run();
+            } finally {
+                flights.remove(k, task);
+            }
+        }
+        try {
+            return (T) flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ArException("load cache interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ArException("load cache error.", cause);
+        }
+    }
+
+
+    private static final class Key {
+
+        private final Cache cache;
+
+        private final String key;
+
+        Key(Cache cache, String key) {
+            this.cache = cache;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.cache == other.cache && this.key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(cache) + key.hashCode();
+        }
+    }
+
+
+    private SingleFlight() {
+        throw new UnsupportedOperationException("Private constructor, cannot be accessed.");
+    }
+}
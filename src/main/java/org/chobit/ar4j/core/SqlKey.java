@@ -0,0 +1,60 @@
+package org.chobit.ar4j.core;
+
+import java.util.Arrays;
+
+/**
+ * SQL模板缓存的键，由操作类型、表名以及列的组合构成
+ */
+final class SqlKey {
+
+    enum Type {
+        INSERT, MULTI_INSERT, UPSERT, UPDATE, GET, GET_IN, DELETE, PAGE
+    }
+
+    private final Type type;
+
+    private final String tableName;
+
+    private final String[] columns;
+
+    private final int rows;
+
+    private final int hash;
+
+    SqlKey(Type type, String tableName, String[] columns) {
+        this(type, tableName, columns, 1);
+    }
+
+    SqlKey(Type type, String tableName, String[] columns, int rows) {
+        this.type = type;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.rows = rows;
+        int h = type.hashCode();
+        h = 31 * h + tableName.hashCode();
+        h = 31 * h + Arrays.hashCode(columns);
+        h = 31 * h + rows;
+        this.hash = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SqlKey)) {
+            return false;
+        }
+        SqlKey other = (SqlKey) o;
+        return this.hash == other.hash
+                && this.type == other.type
+                && this.rows == other.rows
+                && this.tableName.equals(other.tableName)
+                && Arrays.equals(this.columns, other.columns);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+}
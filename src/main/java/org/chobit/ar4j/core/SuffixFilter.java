@@ -0,0 +1,38 @@
+package org.chobit.ar4j.core;
+
+/**
+ * 分表过滤条件，作用于SeqModel.suffixKey()返回的后缀键，只查询accept()返回true的分表。
+ * 可以使用between()等方法创建范围条件，也可以继承该类实现任意条件
+ */
+public abstract class SuffixFilter {
+
+    /**
+     * 判断后缀键为key的分表是否需要查询
+     */
+    public abstract boolean accept(Object key);
+
+
+    /**
+     * 后缀键在[from, to]范围内的分表，from或to为null时该侧不限
+     */
+    public static <K extends Comparable<? super K>> SuffixFilter between(final K from, final K to) {
+        return new SuffixFilter() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean accept(Object key) {
+                K k = (K) key;
+                return (null == from || k.compareTo(from) >= 0) && (null == to || k.compareTo(to) <= 0);
+            }
+        };
+    }
+
+
+    public static <K extends Comparable<? super K>> SuffixFilter atLeast(K from) {
+        return between(from, null);
+    }
+
+
+    public static <K extends Comparable<? super K>> SuffixFilter atMost(K to) {
+        return between(null, to);
+    }
+}
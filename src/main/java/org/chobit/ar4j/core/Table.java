@@ -1,20 +1,51 @@
 package org.chobit.ar4j.core;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 记录表的一些元数据
  */
 class Table {
 
+    /**
+     * 每个表缓存的SQL模板和结果集映射器的数量上限，避免分表或临时拼装的SQL导致缓存无限增长
+     */
+    private static final int MAX_SQL_TEMPLATES = 512;
+
+    /**
+     * 列信息尚未加载
+     */
+    static final int COLUMNS_EMPTY = 0;
+
+    /**
+     * 列信息来自本地的快照文件，尚未与数据库核对
+     */
+    static final int COLUMNS_SNAPSHOT = 1;
+
+    /**
+     * 列信息已从数据库加载
+     */
+    static final int COLUMNS_LOADED = 2;
+
     private Class<? extends Model> modelClass;
 
     private String tableFlag;
 
     private String primaryKey;
 
-    private Map<String, Class> column2Classes = new HashMap<String, Class>();
+    /**
+     * 列信息、列布局及加载状态作为一个整体替换，读取方不会看到新旧混合的状态
+     */
+    private volatile ColumnInfo columns = ColumnInfo.EMPTY;
+
+    private final ConcurrentMap<SqlKey, String> sqlTemplates = new ConcurrentHashMap<SqlKey, String>();
+
+    private final ConcurrentMap<RowMapper.Shape, RowMapper> rowMappers = new ConcurrentHashMap<RowMapper.Shape, RowMapper>();
 
     Table(Class<? extends Model> modelClass, String tableFlag, String primaryKey) {
         this.modelClass = modelClass;
@@ -35,15 +66,88 @@ class Table {
     }
 
     Class getPrimaryKeyClass() {
-        return this.column2Classes.get(this.primaryKey);
+        return this.columns.classes.get(this.primaryKey);
     }
 
     Class getColumnClass(String columnName) {
-        return this.column2Classes.get(columnName);
+        return this.columns.classes.get(columnName);
+    }
+
+    Map<String, Class> getColumnClasses() {
+        return this.columns.classes;
+    }
+
+    /**
+     * 整体替换表的列信息，并重新分配列的槽位，槽位按列名排序
+     */
+    synchronized void setColumnClasses(Map<String, Class> columnClasses, int state) {
+        ColumnInfo current = this.columns;
+        if (columnClasses.equals(current.classes)) {
+            this.columns = new ColumnInfo(current.classes, current.layout, state);
+            return;
+        }
+        String[] names = columnClasses.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        // 列名不变时沿用原有的槽位，已创建的Model实例仍可按槽位读写
+        Props.Layout layout = Arrays.equals(names, current.layout.getNames()) ? current.layout : new Props.Layout(names);
+        this.columns = new ColumnInfo(Collections.unmodifiableMap(new HashMap<String, Class>(columnClasses)), layout, state);
+        // 映射器是按旧的列信息构建的
+        this.rowMappers.clear();
+    }
+
+    int getColumnsState() {
+        return this.columns.state;
+    }
+
+    /**
+     * 获取列布局
+     */
+    Props.Layout getLayout() {
+        return this.columns.layout;
     }
 
-    void addColumnClass(String column, Class columnClass) {
-        this.column2Classes.put(column, columnClass);
+    String getSqlTemplate(SqlKey key) {
+        return this.sqlTemplates.get(key);
     }
 
+    /**
+     * 缓存SQL模板，返回最终保存在缓存中的SQL
+     */
+    String putSqlTemplate(SqlKey key, String sql) {
+        if (this.sqlTemplates.size() >= MAX_SQL_TEMPLATES) {
+            return sql;
+        }
+        String prev = this.sqlTemplates.putIfAbsent(key, sql);
+        return null == prev ? sql : prev;
+    }
+
+    RowMapper getRowMapper(RowMapper.Shape shape) {
+        return this.rowMappers.get(shape);
+    }
+
+    RowMapper putRowMapper(RowMapper.Shape shape, RowMapper mapper) {
+        if (this.rowMappers.size() >= MAX_SQL_TEMPLATES) {
+            return mapper;
+        }
+        RowMapper prev = this.rowMappers.putIfAbsent(shape, mapper);
+        return null == prev ? mapper : prev;
+    }
+
+
+    private static final class ColumnInfo {
+
+        static final ColumnInfo EMPTY = new ColumnInfo(Collections.<String, Class>emptyMap(), Props.Layout.EMPTY, COLUMNS_EMPTY);
+
+        final Map<String, Class> classes;
+
+        final Props.Layout layout;
+
+        final int state;
+
+        ColumnInfo(Map<String, Class> classes, Props.Layout layout, int state) {
+            this.classes = classes;
+            this.layout = layout;
+            this.state = state;
+        }
+    }
 }
@@ -0,0 +1,203 @@
+package org.chobit.ar4j.core;
+
+
+import org.chobit.ar4j.core.exception.ArException;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 事务。将一个连接绑定到当前线程，事务范围内同一ArConfig下的Model操作共用这个连接及其PreparedStatement，
+ * 最后统一提交或回滚。
+ * <p>
+ * 通过ArConfig的beginTransaction()方法开启，使用完毕后必须调用close()。close()时尚未提交的操作会被回滚。
+ */
+public final class Transaction implements Closeable {
+
+    private static final ThreadLocal<Map<ArConfig, Transaction>> bound = new ThreadLocal<Map<ArConfig, Transaction>>() {
+        @Override
+        protected Map<ArConfig, Transaction> initialValue() {
+            return new HashMap<ArConfig, Transaction>(4);
+        }
+    };
+
+    private final ArConfig config;
+
+    private final Connection conn;
+
+    private final boolean autoCommit;
+
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+    private final Map<String, PreparedStatement> keyStatements = new HashMap<String, PreparedStatement>();
+
+    private final Set<PreparedStatement> cached = Collections.newSetFromMap(new IdentityHashMap<PreparedStatement, Boolean>());
+
+    private boolean closed;
+
+    private Transaction(ArConfig config, Connection conn) throws SQLException {
+        this.config = config;
+        this.conn = conn;
+        this.autoCommit = conn.getAutoCommit();
+        if (this.autoCommit) {
+            conn.setAutoCommit(false);
+        }
+    }
+
+
+    static Transaction begin(ArConfig config) {
+        Map<ArConfig, Transaction> txs = bound.get();
+        if (txs.containsKey(config)) {
+            throw new ArException("transaction already in progress.");
+        }
+        Connection conn = null;
+        try {
+            conn = config.getDataSource().getConnection();
+            Transaction tx = new Transaction(config, conn);
+            txs.put(config, tx);
+            return tx;
+        } catch (SQLException e) {
+            ArHelper.closeConnection(conn);
+            throw new ArException("begin transaction error.", e);
+        }
+    }
+
+
+    /**
+     * 获取当前线程中ArConfig对应的事务，没有时返回null
+     */
+    static Transaction current(ArConfig config) {
+        Map<ArConfig, Transaction> txs = bound.get();
+        return txs.isEmpty() ? null : txs.get(config);
+    }
+
+
+    /**
+     * 判断连接是否绑定在当前线程的事务中
+     */
+    static boolean isBound(Connection conn) {
+        Map<ArConfig, Transaction> txs = bound.get();
+        if (txs.isEmpty()) {
+            return false;
+        }
+        for (Transaction tx : txs.values()) {
+            if (tx.conn == conn) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * 获取事务中缓存的PreparedStatement，连接不属于当前线程的事务时返回null
+     */
+    static PreparedStatement prepare(Connection conn, String sql, boolean returnKeys) throws SQLException {
+        Map<ArConfig, Transaction> txs = bound.get();
+        if (txs.isEmpty()) {
+            return null;
+        }
+        for (Transaction tx : txs.values()) {
+            if (tx.conn == conn) {
+                return tx.prepare(sql, returnKeys);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 归还事务中缓存的PreparedStatement，清除参数及未执行的批次，不是缓存的PreparedStatement时返回false
+     */
+    static boolean release(PreparedStatement ps) throws SQLException {
+        Map<ArConfig, Transaction> txs = bound.get();
+        if (txs.isEmpty()) {
+            return false;
+        }
+        for (Transaction tx : txs.values()) {
+            if (tx.cached.contains(ps)) {
+                ps.clearParameters();
+                ps.clearBatch();
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private PreparedStatement prepare(String sql, boolean returnKeys) throws SQLException {
+        Map<String, PreparedStatement> map = returnKeys ? keyStatements : statements;
+        PreparedStatement ps = map.get(sql);
+        if (null == ps) {
+            ps = returnKeys ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : conn.prepareStatement(sql);
+            map.put(sql, ps);
+            cached.add(ps);
+        }
+        return ps;
+    }
+
+
+    public Connection getConnection() {
+        return this.conn;
+    }
+
+
+    public void commit() {
+        checkOpen();
+        try {
+            conn.commit();
+        } catch (SQLException e) {
+            throw new ArException("commit transaction error.", e);
+        }
+    }
+
+
+    public void rollback() {
+        checkOpen();
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            throw new ArException("rollback transaction error.", e);
+        }
+    }
+
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        bound.get().remove(config);
+        try {
+            // 已提交时回滚不会有影响，提交后又执行的操作则不应被恢复autoCommit时隐式提交
+            conn.rollback();
+            for (PreparedStatement ps : cached) {
+                ps.close();
+            }
+            if (autoCommit) {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new ArException("close transaction error.", e);
+        } finally {
+            cached.clear();
+            ArHelper.closeConnection(conn);
+        }
+    }
+
+
+    private void checkOpen() {
+        if (closed) {
+            throw new ArException("transaction already closed.");
+        }
+    }
+}
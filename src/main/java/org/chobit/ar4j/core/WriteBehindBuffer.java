@@ -0,0 +1,293 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.exception.ArException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 延迟写入缓冲区。多个线程通过add()提交待写入的Model，缓冲的记录数达到batchSize或距上次写入超过flushInterval时，
+ * 由后台线程通过batchSave()批量写入。
+ * <p>
+ * 缓冲区的容量有上限，已满时按OverflowPolicy阻塞或拒绝。每批记录在一个事务中写入，
+ * 写入失败的批次整体回滚后交给FailureHandler处理，不会重试。
+ * 使用完毕后应调用close()，close()会写入缓冲区中剩余的全部记录。未调用close()时，JVM正常退出时会通过shutdown hook
+ * 写入剩余的记录，但此时数据源可能已经关闭，不能依赖这一兜底。
+ *
+ * @param <M> Model类型
+ */
+public class WriteBehindBuffer<M extends Model<M>> implements Closeable {
+
+    /**
+     * 缓冲区已满时的处理方式
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * 阻塞提交的线程，直到缓冲区有空余
+         */
+        BLOCK,
+
+        /**
+         * add()直接返回false
+         */
+        REJECT
+    }
+
+    /**
+     * 处理写入失败的批次
+     */
+    public interface FailureHandler<M> {
+
+        void onFailure(List<M> batch, Throwable error);
+    }
+
+    private final Class<M> modelClass;
+
+    private final ConcurrentLinkedQueue<M> queue = new ConcurrentLinkedQueue<M>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Semaphore capacity;
+
+    private final int batchSize;
+
+    private final OverflowPolicy policy;
+
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final Object flushLock = new Object();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushRequested.set(false);
+            flush();
+        }
+    };
+
+    private final Thread shutdownHook;
+
+    private volatile FailureHandler<M> failureHandler;
+
+    private volatile boolean closed;
+
+    /**
+     * @param modelClass    写入的Model类，缓冲区只接受该类的记录
+     * @param capacity      缓冲区最多容纳的记录数，包括正在写入的记录，不能小于batchSize
+     * @param batchSize     每批写入的记录数，缓冲的记录数达到该值时立即写入
+     * @param flushInterval 两次定时写入的间隔
+     * @param unit          间隔的单位
+     * @param policy        缓冲区已满时的处理方式
+     */
+    public WriteBehindBuffer(Class<M> modelClass, int capacity, int batchSize, long flushInterval, TimeUnit unit, OverflowPolicy policy) {
+        if (null == modelClass) {
+            throw new IllegalArgumentException("modelClass cannot be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        if (capacity < batchSize) {
+            // 缓冲的记录数达不到batchSize，只能等待定时写入
+            throw new IllegalArgumentException("capacity cannot be less than batchSize");
+        }
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("flushInterval must be positive");
+        }
+        if (null == policy) {
+            throw new IllegalArgumentException("policy cannot be null");
+        }
+        this.modelClass = modelClass;
+        this.capacity = new Semaphore(capacity);
+        this.batchSize = batchSize;
+        this.policy = policy;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ar4j-write-behind");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.flusher.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, unit);
+        this.shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "ar4j-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+
+    public void setFailureHandler(FailureHandler<M> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+
+    /**
+     * 提交待写入的Model。缓冲区已满时，BLOCK策略下等待，REJECT策略下返回false
+     */
+    public boolean add(M model) {
+        if (null == model) {
+            throw new IllegalArgumentException("model cannot be null");
+        }
+        if (model.getClass() != modelClass) {
+            throw new IllegalArgumentException("model must be an instance of " + modelClass.getName());
+        }
+        checkOpen();
+        if (OverflowPolicy.REJECT == policy) {
+            if (!capacity.tryAcquire()) {
+                return false;
+            }
+        } else {
+            try {
+                capacity.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ArException("add to write-behind buffer interrupted.", e);
+            }
+        }
+        queue.offer(model);
+        pending.incrementAndGet();
+        if (closed) {
+            // close()可能已经写完了剩余的记录
+            flush();
+            return true;
+        }
+        if (pending.get() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(flushTask);
+            } catch (RuntimeException e) {
+                // 已关闭，剩余的记录由close()写入
+                flushRequested.set(false);
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 在当前线程中写入缓冲区中的全部记录
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<M> batch = new ArrayList<M>(batchSize);
+            M m;
+            while (null != (m = queue.poll())) {
+                batch.add(m);
+                if (batch.size() >= batchSize) {
+                    write(batch);
+                    batch = new ArrayList<M>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+    }
+
+
+    private void write(final List<M> batch) {
+        pending.addAndGet(-batch.size());
+        try {
+            final M first = batch.get(0);
+            ArConfig config = Ar.requireConfig(modelClass);
+            if (null != Transaction.current(config)) {
+                first.batchSave(batch);
+            } else {
+                config.transaction(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        first.batchSave(batch);
+                        return null;
+                    }
+                });
+            }
+            writtenCount.addAndGet(batch.size());
+        } catch (Throwable t) {
+            failedCount.addAndGet(batch.size());
+            FailureHandler<M> handler = this.failureHandler;
+            if (null != handler) {
+                try {
+                    handler.onFailure(batch, t);
+                } catch (Throwable ignore) {
+                    // 不影响后续批次的写入
+                }
+            }
+        } finally {
+            capacity.release(batch.size());
+        }
+    }
+
+
+    /**
+     * 缓冲区中等待写入的记录数
+     */
+    public int getPendingCount() {
+        return Math.max(0, pending.get());
+    }
+
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+
+    /**
+     * 停止定时写入，并写入缓冲区中剩余的全部记录。close()之后不能再提交记录
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM正在退出
+            }
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+
+    private void checkOpen() {
+        if (closed) {
+            throw new ArException("write-behind buffer already closed.");
+        }
+    }
+}
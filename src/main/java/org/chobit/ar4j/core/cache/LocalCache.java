@@ -0,0 +1,173 @@
+package org.chobit.ar4j.core.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内缓存的实现。按key分段加锁，每段按LRU策略淘汰，支持按记录设置有效期。
+ * <p>
+ * ttl的单位为毫秒，不大于0时表示不过期。
+ */
+public class LocalCache implements Cache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+
+    private final long defaultTtl;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public LocalCache(int maxSize) {
+        this(maxSize, 0);
+    }
+
+    /**
+     * @param maxSize    缓存的最大记录数
+     * @param defaultTtl 调用put(key, value)时使用的有效期，单位为毫秒
+     */
+    public LocalCache(int maxSize, long defaultTtl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        int segmentCount = Math.min(SEGMENT_COUNT, maxSize);
+        int segmentSize = (maxSize + segmentCount - 1) / segmentCount;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment(segmentSize);
+        }
+        this.defaultTtl = defaultTtl;
+    }
+
+
+    @Override
+    public <T> void put(String key, T value, long ttl) {
+        if (null == value) {
+            invalidate(key);
+            return;
+        }
+        long expireAt = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new CacheEntry(value, expireAt));
+        }
+    }
+
+
+    @Override
+    public <T> void put(String key, T value) {
+        put(key, value, defaultTtl);
+    }
+
+
+    @Override
+    public <T> T get(String key) {
+        Segment segment = segmentFor(key);
+        CacheEntry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (null != entry && entry.isExpired()) {
+                segment.remove(key);
+                entry = null;
+            }
+        }
+        if (null == entry) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return (T) entry.value;
+    }
+
+
+    public void invalidate(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+
+    private static final class CacheEntry {
+
+        private final Object value;
+
+        private final long expireAt;
+
+        CacheEntry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired() {
+            return expireAt > 0 && System.currentTimeMillis() >= expireAt;
+        }
+    }
+
+
+    private final class Segment extends LinkedHashMap<String, CacheEntry> {
+
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            if (size() > maxSize) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.chobit.ar4j.core.datasource;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * 选择未关闭连接最少的副本，连接数相同时轮流选择
+ */
+public class LeastOutstandingBalancer implements ReplicaBalancer {
+
+    private final AtomicInteger offset = new AtomicInteger();
+
+    @Override
+    public Replica choose(List<? extends Replica> candidates) {
+        int size = candidates.size();
+        int start = (offset.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Replica best = null;
+        for (int i = 0; i < size; i++) {
+            Replica r = candidates.get((start + i) % size);
+            if (null == best || r.getOutstanding() < best.getOutstanding()) {
+                best = r;
+            }
+        }
+        return best;
+    }
+}
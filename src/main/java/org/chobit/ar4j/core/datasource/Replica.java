@@ -0,0 +1,28 @@
+package org.chobit.ar4j.core.datasource;
+
+import javax.sql.DataSource;
+
+
+/**
+ * 只读副本，由ArConfig维护，供ReplicaBalancer选择
+ */
+public interface Replica {
+
+    /**
+     * 副本在ArConfig副本列表中的位置
+     */
+    int getIndex();
+
+    DataSource getDataSource();
+
+    /**
+     * 从该副本获取且尚未关闭的连接数
+     */
+    int getOutstanding();
+
+    /**
+     * 是否因连续失败被暂时移出了可选的副本
+     */
+    boolean isEjected();
+
+}
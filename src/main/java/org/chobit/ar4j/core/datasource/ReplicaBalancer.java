@@ -0,0 +1,16 @@
+package org.chobit.ar4j.core.datasource;
+
+import java.util.List;
+
+
+/**
+ * 为读操作选择副本
+ */
+public interface ReplicaBalancer {
+
+    /**
+     * 从candidates中选择一个副本，candidates中只包含未被移出的副本，且不会为空
+     */
+    Replica choose(List<? extends Replica> candidates);
+
+}
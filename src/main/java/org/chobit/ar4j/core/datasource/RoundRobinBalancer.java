@@ -0,0 +1,19 @@
+package org.chobit.ar4j.core.datasource;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * 轮流选择各个副本
+ */
+public class RoundRobinBalancer implements ReplicaBalancer {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public Replica choose(List<? extends Replica> candidates) {
+        int i = next.getAndIncrement() & Integer.MAX_VALUE;
+        return candidates.get(i % candidates.size());
+    }
+}
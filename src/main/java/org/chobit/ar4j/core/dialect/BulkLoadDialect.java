@@ -0,0 +1,28 @@
+package org.chobit.ar4j.core.dialect;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 支持批量导入(如MySQL的load data local infile、PostgreSQL的copy from stdin)的Dialect
+ * <p>
+ * 导入的数据按bulkLoadFormat()返回的格式写出，列按columns的顺序排列。java.util.Date及java.sql.Timestamp
+ * 按Timestamp.toString()的格式(yyyy-mm-dd hh:mm:ss.fffffffff)写出，java.sql.Date和java.sql.Time
+ * 按各自的toString()写出(yyyy-mm-dd、hh:mm:ss)，其他类型的值按toString()写出
+ */
+public interface BulkLoadDialect extends Dialect {
+
+    /**
+     * 导入数据的格式，需要与bulkLoad()中导入语句的设置一致
+     */
+    CsvFormat bulkLoadFormat();
+
+
+    /**
+     * 将input中的记录导入tableName表，返回导入的记录数。input按需生成数据，不需要关闭
+     */
+    long bulkLoad(Connection conn, String tableName, String[] columns, InputStream input) throws SQLException, IOException;
+
+}
@@ -0,0 +1,45 @@
+package org.chobit.ar4j.core.dialect;
+
+/**
+ * bulkLoad()写出数据的格式，由BulkLoadDialect根据数据库的导入语句选择。
+ * 两种格式都以UTF-8编码，每行一条记录，以\n结尾，没有标题行，列之间以逗号分隔
+ */
+public final class CsvFormat {
+
+    /**
+     * RFC 4180格式，适用于PostgreSQL的copy ... from stdin with (format csv)：
+     * 包含逗号、双引号、换行符的值及空字符串以双引号包围，值中的双引号写为两个双引号；null写为不加引号的空值
+     */
+    public static final CsvFormat CSV = new CsvFormat("", false);
+
+    /**
+     * MySQL load data的默认转义方式，对应fields terminated by ',' escaped by '\\' lines terminated by '\n'：
+     * 值不加引号，其中的\、逗号、双引号以\转义，换行符、回车符、\0分别写为\n、\r、\0；null写为\N，空字符串写为空值
+     */
+    public static final CsvFormat MYSQL = new CsvFormat("\\N", true);
+
+    private final String nullValue;
+
+    private final boolean backslashEscape;
+
+    private CsvFormat(String nullValue, boolean backslashEscape) {
+        this.nullValue = nullValue;
+        this.backslashEscape = backslashEscape;
+    }
+
+
+    /**
+     * null值写出的内容，不加引号
+     */
+    public String getNullValue() {
+        return nullValue;
+    }
+
+
+    /**
+     * 是否以\转义特殊字符，为false时以双引号包围
+     */
+    public boolean isBackslashEscape() {
+        return backslashEscape;
+    }
+}
@@ -0,0 +1,14 @@
+package org.chobit.ar4j.core.dialect;
+
+
+/**
+ * 支持多行insert语句(insert into ... values (...), (...))的Dialect
+ */
+public interface MultiRowInsertDialect extends Dialect {
+
+    /**
+     * 单条语句允许绑定的参数数量上限，多行insert语句的行数会据此计算
+     */
+    int maxInsertParams();
+
+}
@@ -0,0 +1,19 @@
+package org.chobit.ar4j.core.dialect;
+
+
+/**
+ * 定制分页查询的Dialect，未实现该接口时使用"limit ?"子句，每页默认20条记录
+ */
+public interface PagingDialect extends Dialect {
+
+    /**
+     * 未指定每页记录数时使用的默认值
+     */
+    int defaultPageSize();
+
+    /**
+     * 为查询语句添加限制返回记录数的子句，记录数通过一个占位符绑定，如"select ... limit ?"
+     */
+    String sqlLimit(String sql);
+
+}
@@ -0,0 +1,15 @@
+package org.chobit.ar4j.core.dialect;
+
+
+/**
+ * 支持upsert(记录存在时更新，否则插入)语句的Dialect，常见的写法可以通过Upserts中的方法生成
+ */
+public interface UpsertDialect extends Dialect {
+
+    /**
+     * 构建upsert语句。columns为写入的列，参数按columns的顺序绑定；keys为判断记录是否已存在的唯一键列，
+     * 记录已存在时更新columns中keys以外的列
+     */
+    String sqlUpsert(String tableName, String[] columns, String[] keys);
+
+}
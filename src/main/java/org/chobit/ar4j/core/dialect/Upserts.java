@@ -0,0 +1,140 @@
+package org.chobit.ar4j.core.dialect;
+
+/**
+ * 常见数据库upsert语句的生成方法，供UpsertDialect的实现使用
+ */
+public final class Upserts {
+
+    private Upserts() {
+        throw new UnsupportedOperationException("Private constructor, cannot be accessed.");
+    }
+
+
+    /**
+     * MySQL：insert into t (a, b) values (?, ?) on duplicate key update b = values(b)
+     */
+    public static String onDuplicateKeyUpdate(String tableName, String[] columns, String[] keys) {
+        StringBuilder sql = insert(tableName, columns).append(" on duplicate key update ");
+        String[] updates = updateColumns(columns, keys);
+        if (0 == updates.length) {
+            // 没有需要更新的列时，记录已存在则保持不变
+            return sql.append(keys[0]).append(" = ").append(keys[0]).toString();
+        }
+        for (int i = 0; i < updates.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(updates[i]).append(" = values(").append(updates[i]).append(")");
+        }
+        return sql.toString();
+    }
+
+
+    /**
+     * PostgreSQL、SQLite：insert into t (a, b) values (?, ?) on conflict (a) do update set b = excluded.b
+     */
+    public static String onConflictDoUpdate(String tableName, String[] columns, String[] keys) {
+        StringBuilder sql = insert(tableName, columns).append(" on conflict (");
+        join(sql, keys, "");
+        sql.append(")");
+        String[] updates = updateColumns(columns, keys);
+        if (0 == updates.length) {
+            return sql.append(" do nothing").toString();
+        }
+        sql.append(" do update set ");
+        for (int i = 0; i < updates.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(updates[i]).append(" = excluded.").append(updates[i]);
+        }
+        return sql.toString();
+    }
+
+
+    /**
+     * 标准SQL的merge语句，适用于H2、SQL Server等：
+     * merge into t using (values (?, ?)) s_ (a, b) on (t.a = s_.a) when matched then update set b = s_.b
+     * when not matched then insert (a, b) values (s_.a, s_.b);
+     * <p>
+     * SQL Server要求merge语句以分号结尾
+     */
+    public static String merge(String tableName, String[] columns, String[] keys) {
+        StringBuilder sql = new StringBuilder("merge into ");
+        sql.append(tableName).append(" using (values (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        sql.append(")) s_ (");
+        join(sql, columns, "");
+        sql.append(") on (");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sql.append(" and ");
+            }
+            sql.append(tableName).append(".").append(keys[i]).append(" = s_.").append(keys[i]);
+        }
+        sql.append(")");
+        String[] updates = updateColumns(columns, keys);
+        if (updates.length > 0) {
+            sql.append(" when matched then update set ");
+            for (int i = 0; i < updates.length; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(updates[i]).append(" = s_.").append(updates[i]);
+            }
+        }
+        sql.append(" when not matched then insert (");
+        join(sql, columns, "");
+        sql.append(") values (");
+        join(sql, columns, "s_.");
+        return sql.append(");").toString();
+    }
+
+
+    private static StringBuilder insert(String tableName, String[] columns) {
+        StringBuilder sql = new StringBuilder("insert into ");
+        sql.append(tableName).append(" (");
+        join(sql, columns, "");
+        sql.append(") values (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(")");
+    }
+
+
+    private static void join(StringBuilder sql, String[] names, String prefix) {
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(prefix).append(names[i]);
+        }
+    }
+
+
+    /**
+     * columns中除keys以外的列，列名不区分大小写
+     */
+    private static String[] updateColumns(String[] columns, String[] keys) {
+        String[] updates = new String[columns.length];
+        int n = 0;
+        for (String column : columns) {
+            boolean key = false;
+            for (String k : keys) {
+                if (k.equalsIgnoreCase(column)) {
+                    key = true;
+                    break;
+                }
+            }
+            if (!key) {
+                updates[n++] = column;
+            }
+        }
+        String[] result = new String[n];
+        System.arraycopy(updates, 0, result, 0, n);
+        return result;
+    }
+}
@@ -0,0 +1,24 @@
+package org.chobit.ar4j.core.metrics;
+
+/**
+ * Model操作的监控接口，通过ArConfig的setInstrumentation()方法注册。未注册时不会产生任何统计开销。
+ * <p>
+ * 实现类会被多个线程同时调用，需要保证线程安全。
+ */
+public interface Instrumentation {
+
+    /**
+     * 操作开始时调用，返回值会在操作结束时传给end()，可以用来传递追踪的上下文，不需要时返回null
+     */
+    Object start(Class<?> modelClass, Operation operation);
+
+    /**
+     * 操作结束时调用
+     */
+    void end(Object context, Class<?> modelClass, Operation operation, Sample sample);
+
+    /**
+     * 带缓存的查询读取缓存后调用
+     */
+    void cache(Class<?> modelClass, Operation operation, boolean hit);
+}
@@ -0,0 +1,115 @@
+package org.chobit.ar4j.core.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 将操作统计导出到JMX。每个Model类的每种操作注册为一个MBean，ObjectName为
+ * org.chobit.ar4j:type=Operation,name={name},model={Model类名},operation={操作}
+ */
+public class JmxMetrics implements Instrumentation {
+
+    private static final String DOMAIN = "org.chobit.ar4j";
+
+    private final String name;
+
+    private final MBeanServer server;
+
+    private final ConcurrentMap<Class<?>, OperationStats[]> stats = new ConcurrentHashMap<Class<?>, OperationStats[]>();
+
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    /**
+     * @param name 用于区分不同的ArConfig，会出现在ObjectName中
+     */
+    public JmxMetrics(String name) {
+        this(name, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetrics(String name, MBeanServer server) {
+        this.name = ObjectName.quote(name);
+        this.server = server;
+    }
+
+
+    @Override
+    public Object start(Class<?> modelClass, Operation operation) {
+        return null;
+    }
+
+
+    @Override
+    public void end(Object context, Class<?> modelClass, Operation operation, Sample sample) {
+        getStats(modelClass, operation).record(sample);
+    }
+
+
+    @Override
+    public void cache(Class<?> modelClass, Operation operation, boolean hit) {
+        getStats(modelClass, operation).recordCache(hit);
+    }
+
+
+    /**
+     * 获取Model类某种操作的统计信息，首次获取时注册对应的MBean
+     */
+    public OperationStats getStats(Class<?> modelClass, Operation operation) {
+        OperationStats[] array = stats.get(modelClass);
+        if (null == array) {
+            array = register(modelClass);
+        }
+        return array[operation.ordinal()];
+    }
+
+
+    /**
+     * 注销全部MBean
+     */
+    public void unregister() {
+        synchronized (registered) {
+            for (ObjectName on : registered) {
+                try {
+                    server.unregisterMBean(on);
+                } catch (JMException e) {
+                    // 已被注销
+                }
+            }
+            registered.clear();
+        }
+    }
+
+
+    private OperationStats[] register(Class<?> modelClass) {
+        synchronized (registered) {
+            OperationStats[] array = stats.get(modelClass);
+            if (null != array) {
+                return array;
+            }
+            Operation[] operations = Operation.values();
+            array = new OperationStats[operations.length];
+            for (Operation op : operations) {
+                OperationStats s = new OperationStats();
+                array[op.ordinal()] = s;
+                try {
+                    ObjectName on = new ObjectName(DOMAIN + ":type=Operation,name=" + name
+                            + ",model=" + modelClass.getName() + ",operation=" + op.name().toLowerCase());
+                    if (server.isRegistered(on)) {
+                        server.unregisterMBean(on);
+                    }
+                    server.registerMBean(s, on);
+                    registered.add(on);
+                } catch (JMException e) {
+                    // 注册失败时仍然统计，只是无法通过JMX查看
+                }
+            }
+            stats.put(modelClass, array);
+            return array;
+        }
+    }
+}
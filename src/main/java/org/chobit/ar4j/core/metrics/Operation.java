@@ -0,0 +1,27 @@
+package org.chobit.ar4j.core.metrics;
+
+/**
+ * 被统计的Model操作
+ */
+public enum Operation {
+
+    SAVE,
+
+    BATCH_SAVE,
+
+    UPSERT,
+
+    BATCH_UPSERT,
+
+    BULK_LOAD,
+
+    UPDATE,
+
+    DELETE,
+
+    FIND,
+
+    FIND_IN_SEQ,
+
+    SCAN
+}
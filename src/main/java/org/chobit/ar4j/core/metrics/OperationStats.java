@@ -0,0 +1,192 @@
+package org.chobit.ar4j.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 操作统计的实现。耗时按微秒取对数分桶记录，分位数取所在桶的上界，误差在一倍以内。
+ */
+public class OperationStats implements OperationStatsMBean {
+
+    private static final int BUCKETS = 40;
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong rows = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final AtomicLong connectNanos = new AtomicLong();
+
+    private final AtomicLong executeNanos = new AtomicLong();
+
+    private final AtomicLong mapNanos = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+
+    void record(Sample sample) {
+        long nanos = sample.getTotalNanos();
+        histogram.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        if (null != sample.getError()) {
+            errors.incrementAndGet();
+        }
+        rows.addAndGet(sample.getRows());
+        totalNanos.addAndGet(nanos);
+        connectNanos.addAndGet(sample.getConnectNanos());
+        executeNanos.addAndGet(sample.getExecuteNanos());
+        mapNanos.addAndGet(sample.getMapNanos());
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+
+    void recordCache(boolean hit) {
+        (hit ? cacheHits : cacheMisses).incrementAndGet();
+    }
+
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return mean(totalNanos);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public double getP95Millis() {
+        return percentile(0.95);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public double getMeanConnectMillis() {
+        return mean(connectNanos);
+    }
+
+    @Override
+    public double getMeanExecuteMillis() {
+        return mean(executeNanos);
+    }
+
+    @Override
+    public double getMeanMapMillis() {
+        return mean(mapNanos);
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = cacheHits.get();
+        long total = hits + cacheMisses.get();
+        return 0 == total ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+        count.set(0);
+        errors.set(0);
+        rows.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        connectNanos.set(0);
+        executeNanos.set(0);
+        mapNanos.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+    }
+
+
+    private double mean(AtomicLong nanos) {
+        long n = count.get();
+        return 0 == n ? 0 : nanos.get() / NANOS_PER_MILLI / n;
+    }
+
+
+    private double percentile(double p) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (0 == total) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundMicros(i) / 1000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+
+    /**
+     * 第0个桶记录不足1微秒的操作，第i个桶记录[2^(i-1), 2^i)微秒的操作
+     */
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+
+    private static long upperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+}
@@ -0,0 +1,37 @@
+package org.chobit.ar4j.core.metrics;
+
+/**
+ * 单个Model类的单种操作的统计信息，耗时的单位为毫秒
+ */
+public interface OperationStatsMBean {
+
+    long getCount();
+
+    long getErrorCount();
+
+    long getRows();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    double getMeanConnectMillis();
+
+    double getMeanExecuteMillis();
+
+    double getMeanMapMillis();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRatio();
+
+    void reset();
+}
@@ -0,0 +1,70 @@
+package org.chobit.ar4j.core.metrics;
+
+/**
+ * 一次Model操作的耗时和影响的记录数，耗时的单位为纳秒
+ */
+public final class Sample {
+
+    private final long totalNanos;
+
+    private final long connectNanos;
+
+    private final long executeNanos;
+
+    private final long mapNanos;
+
+    private final long rows;
+
+    private final Throwable error;
+
+    public Sample(long totalNanos, long connectNanos, long executeNanos, long mapNanos, long rows, Throwable error) {
+        this.totalNanos = totalNanos;
+        this.connectNanos = connectNanos;
+        this.executeNanos = executeNanos;
+        this.mapNanos = mapNanos;
+        this.rows = rows;
+        this.error = error;
+    }
+
+    /**
+     * 操作的总耗时
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * 获取连接的耗时
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * 执行SQL语句的耗时
+     */
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /**
+     * 将结果集映射为Model的耗时
+     */
+    public long getMapNanos() {
+        return mapNanos;
+    }
+
+    /**
+     * 查询返回或写入影响的记录数
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * 操作失败时抛出的异常，成功时为null
+     */
+    public Throwable getError() {
+        return error;
+    }
+}
@@ -0,0 +1,227 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+import org.chobit.ar4j.core.dialect.BulkLoadDialect;
+import org.chobit.ar4j.core.dialect.CsvFormat;
+import org.h2.tools.Csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class BulkLoadTest extends TestCase {
+
+    public static class BlRow extends Model<BlRow> {
+    }
+
+    public static class BlLog extends SeqModel<BlLog> {
+
+        @Override
+        public String latestSuffix() {
+            return "2";
+        }
+
+        @Override
+        public String suffixRegex() {
+            return "\\d";
+        }
+
+        @Override
+        protected String suffixOf(BlLog m) {
+            return m.getString("shard");
+        }
+    }
+
+    public static class FbLog extends SeqModel<FbLog> {
+
+        @Override
+        public String latestSuffix() {
+            return "2";
+        }
+
+        @Override
+        public String suffixRegex() {
+            return "\\d";
+        }
+
+        @Override
+        protected String suffixOf(FbLog m) {
+            return m.getString("shard");
+        }
+    }
+
+    /**
+     * 以H2的CSV解析读取导入的数据，逐行插入
+     */
+    static class CsvLoadDialect extends H2.Dialect implements BulkLoadDialect {
+
+        final List<String> loads = new ArrayList<String>();
+
+        @Override
+        public CsvFormat bulkLoadFormat() {
+            return CsvFormat.CSV;
+        }
+
+        @Override
+        public long bulkLoad(Connection conn, String tableName, String[] columns, InputStream input) throws SQLException, IOException {
+            loads.add(tableName);
+            ResultSet rs = new Csv().read(new InputStreamReader(input, StandardCharsets.UTF_8), columns);
+            StringBuilder sql = new StringBuilder("insert into ").append(tableName).append(" (");
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i > 0 ? ", " : "").append(columns[i]);
+            }
+            sql.append(") values (");
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i > 0 ? ", ?" : "?");
+            }
+            PreparedStatement ps = conn.prepareStatement(sql.append(")").toString());
+            long n = 0;
+            try {
+                while (rs.next()) {
+                    for (int i = 1; i <= columns.length; i++) {
+                        ps.setString(i, rs.getString(i));
+                    }
+                    ps.executeUpdate();
+                    n++;
+                }
+            } finally {
+                ps.close();
+            }
+            return n;
+        }
+    }
+
+    private static H2.Plugin plugin;
+
+    private static CsvLoadDialect dialect;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (null == plugin) {
+            plugin = H2.plugin("bl", "create table bl_row (id bigint auto_increment primary key, name varchar(64), n int)",
+                    "create table bl_log_1 (id bigint auto_increment primary key, shard varchar(1), n int)",
+                    "create table bl_log_2 (id bigint auto_increment primary key, shard varchar(1), n int)",
+                    "create table fb_log_1 (id bigint auto_increment primary key, shard varchar(1), n int)",
+                    "create table fb_log_2 (id bigint auto_increment primary key, shard varchar(1), n int)");
+            dialect = new CsvLoadDialect();
+            ArConfig config = new ArConfig("bl", plugin, dialect);
+            config.regTable(BlRow.class);
+            config.regTable("bl_log_", BlLog.class);
+            ArConfig fallback = new ArConfig("bl_fallback", plugin, new H2.Dialect());
+            fallback.setBatchSize(3);
+            fallback.regTable("fb_log_", FbLog.class);
+        }
+        H2.execute(plugin, "delete from bl_row", "delete from bl_log_1", "delete from bl_log_2",
+                "delete from fb_log_1", "delete from fb_log_2");
+        dialect.loads.clear();
+    }
+
+
+    private static String encode(CsvFormat format, int bufferSize, BlRow... rows) throws IOException {
+        Iterator<BlRow> it = Arrays.asList(rows).iterator();
+        InputStream in = new CsvInputStream<BlRow>(it.next(), it, bufferSize, format);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[5];
+        int n;
+        while (-1 != (n = in.read(buf, 0, buf.length))) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+
+    private static BlRow row(Object name) {
+        return new BlRow().set("name", name);
+    }
+
+
+    public void testCsvEncoding() throws Exception {
+        assertEquals("plain\n\"a,b\"\n\"say \"\"hi\"\"\"\n\"x\ny\"\n\"\"\n\n\u4e2d\u6587\n",
+                encode(CsvFormat.CSV, 3, row("plain"), row("a,b"), row("say \"hi\""), row("x\ny"), row(""), row(null),
+                        row("\u4e2d\u6587")));
+    }
+
+
+    public void testMySqlEncoding() throws Exception {
+        assertEquals("plain\na\\,b\nsay \\\"hi\\\"\nx\\ny\\r\n\n\\N\nc:\\\\d\n",
+                encode(CsvFormat.MYSQL, 3, row("plain"), row("a,b"), row("say \"hi\""), row("x\ny\r"), row(""), row(null),
+                        row("c:\\d")));
+    }
+
+
+    public void testDateTimeEncoding() throws Exception {
+        Timestamp ts = Timestamp.valueOf("2024-01-02 03:04:05.6");
+        assertEquals("2024-01-02 03:04:05.6\n", encode(CsvFormat.CSV, 64, row(ts)));
+        assertEquals("2024-01-02 03:04:05.6\n", encode(CsvFormat.CSV, 64, row(new java.util.Date(ts.getTime()))));
+        assertEquals("2024-01-02\n", encode(CsvFormat.CSV, 64, row(java.sql.Date.valueOf("2024-01-02"))));
+        assertEquals("03:04:05\n", encode(CsvFormat.CSV, 64, row(Time.valueOf("03:04:05"))));
+    }
+
+
+    public void testLoadRoundTrip() throws Exception {
+        String[] values = {"a,b", "say \"hi\"", "line1\nline2", "", null, "\u4e2d\u6587"};
+        List<BlRow> rows = new ArrayList<BlRow>();
+        for (String v : values) {
+            rows.add(new BlRow().set("name", v).set("n", 7));
+        }
+        assertEquals(6, new BlRow().bulkLoad(rows.iterator()));
+        for (BlRow r : rows) {
+            assertFalse(r.getProps().isDirty());
+        }
+        assertEquals(1, H2.count(plugin, "select count(*) from bl_row where name is null"));
+        assertEquals(1, H2.count(plugin, "select count(*) from bl_row where name = ''"));
+        assertEquals(1, H2.count(plugin, "select count(*) from bl_row where name = 'line1\nline2'"));
+        assertEquals(1, H2.count(plugin, "select count(*) from bl_row where name = 'say \"hi\"'"));
+    }
+
+
+    public void testMixedColumnsRejected() {
+        try {
+            new BlRow().bulkLoad(Arrays.asList(new BlRow().set("name", "x"), new BlRow().set("n", 1)).iterator());
+            fail();
+        } catch (RuntimeException expected) {
+        }
+    }
+
+
+    public void testSeqRowsRoutedBySuffix() throws Exception {
+        List<BlLog> rows = new ArrayList<BlLog>();
+        for (int i = 0; i < 6; i++) {
+            rows.add(new BlLog().set("shard", i < 4 ? "1" : "2").set("n", i));
+        }
+        rows.add(new BlLog().set("shard", "1").set("n", 6));
+        assertEquals(7, new BlLog().bulkLoad(rows.iterator()));
+        assertEquals(5, H2.count(plugin, "select count(*) from bl_log_1"));
+        assertEquals(2, H2.count(plugin, "select count(*) from bl_log_2"));
+        // 连续写入同一分表的记录合并为一次导入
+        assertEquals(Arrays.asList("bl_log_1", "bl_log_2", "bl_log_1"), dialect.loads);
+    }
+
+
+    public void testFallbackRoutedBySuffix() throws Exception {
+        List<FbLog> rows = new ArrayList<FbLog>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(new FbLog().set("shard", i % 2 == 0 ? "1" : "2").set("n", i));
+        }
+        assertEquals(10, new FbLog().bulkLoad(rows.iterator()));
+        assertEquals(5, H2.count(plugin, "select count(*) from fb_log_1"));
+        assertEquals(5, H2.count(plugin, "select count(*) from fb_log_2"));
+        for (FbLog r : rows) {
+            assertFalse(r.getProps().isDirty());
+        }
+        assertEquals(0, new FbLog().bulkLoad(Collections.<FbLog>emptyIterator()));
+    }
+}
@@ -0,0 +1,55 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+
+public class DirtyUpdateTest extends TestCase {
+
+    public static class DtUser extends Model<DtUser> {
+    }
+
+    private static H2.Plugin plugin;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (null == plugin) {
+            plugin = H2.plugin("dt", "create table dt_user (id bigint primary key, name varchar(16), age int)");
+            ArConfig config = new ArConfig("dt", plugin, new H2.Dialect());
+            config.regTable(DtUser.class);
+        }
+        H2.execute(plugin, "delete from dt_user", "insert into dt_user values (1, 'a', 10)");
+    }
+
+
+    public void testOnlyModifiedColumnsAreWritten() throws Exception {
+        DtUser u = new DtUser().findByPrimaryKey(1L);
+        // 加载之后其他人修改了age
+        H2.execute(plugin, "update dt_user set age = 20 where id = 1");
+        u.set("name", "b");
+        assertTrue(u.update());
+        DtUser reloaded = new DtUser().findByPrimaryKey(1L);
+        assertEquals("b", reloaded.getString("name"));
+        assertEquals(Integer.valueOf(20), reloaded.getInt("age"));
+    }
+
+
+    public void testUpdateWithoutChangesSkipsDatabase() throws Exception {
+        DtUser u = new DtUser().findByPrimaryKey(1L);
+        H2.execute(plugin, "delete from dt_user");
+        // 没有修改过的列时不访问数据库，直接返回true
+        assertTrue(u.update());
+        u.set("name", "c");
+        assertFalse(u.update());
+    }
+
+
+    public void testDirtyStateClearedAfterSave() throws Exception {
+        DtUser u = new DtUser().set("id", 2L).set("name", "x").set("age", 1);
+        assertTrue(u.save());
+        H2.execute(plugin, "update dt_user set name = 'y' where id = 2");
+        u.set("age", 2);
+        assertTrue(u.update());
+        DtUser reloaded = new DtUser().findByPrimaryKey(2L);
+        assertEquals("y", reloaded.getString("name"));
+        assertEquals(Integer.valueOf(2), reloaded.getInt("age"));
+    }
+}
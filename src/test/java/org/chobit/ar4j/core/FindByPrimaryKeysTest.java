@@ -0,0 +1,84 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class FindByPrimaryKeysTest extends TestCase {
+
+    public static class PkUser extends Model<PkUser> {
+    }
+
+    public static class PkOrder extends Model<PkOrder> {
+    }
+
+    private static ArConfig config;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (null != config) {
+            return;
+        }
+        H2.Plugin plugin = H2.plugin("pk", "create table pk_user (id bigint primary key, name varchar(16))",
+                "create table pk_order (id numeric(20, 0) primary key, name varchar(16))");
+        StringBuilder users = new StringBuilder("insert into pk_user values ");
+        StringBuilder orders = new StringBuilder("insert into pk_order values ");
+        for (int i = 1; i <= 600; i++) {
+            users.append(i > 1 ? ", " : "").append("(").append(i).append(", 'u").append(i).append("')");
+            orders.append(i > 1 ? ", " : "").append("(").append(i).append(", 'o").append(i).append("')");
+        }
+        H2.execute(plugin, users.toString(), orders.toString());
+        config = new ArConfig("pk", plugin, new H2.Dialect());
+        config.regTable(PkUser.class);
+        config.regTable(PkOrder.class);
+    }
+
+
+    public void testNormalizeKey() {
+        assertEquals(5L, ArHelper.normalizeKey(5));
+        assertEquals(5L, ArHelper.normalizeKey((short) 5));
+        assertEquals(5L, ArHelper.normalizeKey(BigInteger.valueOf(5)));
+        assertEquals(5L, ArHelper.normalizeKey(new BigDecimal("5.00")));
+        BigInteger huge = BigInteger.ONE.shiftLeft(64);
+        assertEquals(huge, ArHelper.normalizeKey(huge));
+        assertEquals("5", ArHelper.normalizeKey("5"));
+    }
+
+
+    public void testKeepsOrderOfIds() {
+        Map<Integer, PkUser> map = new PkUser().findMapByPrimaryKeys(Arrays.asList(7, 3, 999, 5));
+        assertEquals(Arrays.asList(7, 3, 5), new ArrayList<Integer>(map.keySet()));
+        assertEquals("u3", map.get(3).getString("name"));
+    }
+
+
+    public void testAcrossBuckets() {
+        // 超过最大档位时分批查询，最后一批以最后一个主键补齐
+        List<Long> ids = new ArrayList<Long>();
+        for (long i = 600; i >= 1; i -= 2) {
+            ids.add(i);
+        }
+        ids.add(600L);
+        List<PkUser> users = new PkUser().findByPrimaryKeys(ids);
+        assertEquals(300, users.size());
+        assertEquals("u600", users.get(0).getString("name"));
+        assertEquals("u2", users.get(299).getString("name"));
+    }
+
+
+    public void testDecimalPrimaryKeyMatchesLongIds() {
+        Map<Long, PkOrder> map = new PkOrder().findMapByPrimaryKeys(Arrays.asList(1L, 2L, 300L));
+        assertEquals(3, map.size());
+        assertEquals("o300", map.get(300L).getString("name"));
+    }
+
+
+    public void testEmptyIds() {
+        assertTrue(new PkUser().findMapByPrimaryKeys(new ArrayList<Long>()).isEmpty());
+    }
+}
@@ -0,0 +1,104 @@
+package org.chobit.ar4j.core;
+
+import org.chobit.ar4j.core.datasource.DataSourcePlugin;
+import org.chobit.ar4j.core.dialect.MultiRowInsertDialect;
+import org.h2.jdbcx.JdbcDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 测试使用的H2内存数据库，以MySQL模式运行
+ */
+class H2 {
+
+    static class Dialect implements MultiRowInsertDialect {
+
+        @Override
+        public int maxInsertParams() {
+            return 1000;
+        }
+
+        @Override
+        public String defaultPrimaryKey() {
+            return "id";
+        }
+
+        @Override
+        public String sqlShowColumns() {
+            return "select * from ${TABLE_NAME} where 1=0";
+        }
+
+        @Override
+        public String sqlShowTables() {
+            return "show tables";
+        }
+    }
+
+
+    static class Plugin implements DataSourcePlugin {
+
+        private final JdbcDataSource ds = new JdbcDataSource();
+
+        Plugin(String url) {
+            ds.setURL(url);
+        }
+
+        @Override
+        public DataSource getDataSource() {
+            return ds;
+        }
+    }
+
+
+    /**
+     * 创建名为name的内存数据库并执行ddl中的语句
+     */
+    static Plugin plugin(String name, String... ddl) throws SQLException {
+        Plugin p = new Plugin("jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        execute(p, ddl);
+        return p;
+    }
+
+
+    /**
+     * 使用H2默认的大写标识符，结果集中的列名为大写
+     */
+    static Plugin upperCasePlugin(String name, String... ddl) throws SQLException {
+        Plugin p = new Plugin("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        execute(p, ddl);
+        return p;
+    }
+
+
+    static void execute(DataSourcePlugin p, String... sql) throws SQLException {
+        Connection conn = p.getDataSource().getConnection();
+        try {
+            Statement s = conn.createStatement();
+            for (String d : sql) {
+                s.execute(d);
+            }
+            s.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+
+    static long count(DataSourcePlugin p, String sql) throws SQLException {
+        Connection conn = p.getDataSource().getConnection();
+        try {
+            Statement s = conn.createStatement();
+            ResultSet rs = s.executeQuery(sql);
+            rs.next();
+            long n = rs.getLong(1);
+            s.close();
+            return n;
+        } finally {
+            conn.close();
+        }
+    }
+}
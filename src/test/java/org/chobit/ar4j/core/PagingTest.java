@@ -0,0 +1,157 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+import org.chobit.ar4j.core.exception.ArException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PagingTest extends TestCase {
+
+    public static class PgUser extends Model<PgUser> {
+
+        Page<PgUser> byScore(String cursor, int pageSize) {
+            return findPage("score", cursor, pageSize, "score >= ?", 0);
+        }
+    }
+
+    public static class PgUpper extends Model<PgUpper> {
+
+        Page<PgUpper> byName(String cursor, int pageSize) {
+            return findPage("name", cursor, pageSize, null);
+        }
+    }
+
+    public static class PgLog extends SeqModel<PgLog> {
+
+        @Override
+        public String latestSuffix() {
+            return "20240103";
+        }
+
+        @Override
+        public String suffixRegex() {
+            return "\\d{8}";
+        }
+    }
+
+    private static boolean initialized;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        H2.Plugin plugin = H2.plugin("pg", "create table pg_user (id bigint primary key, name varchar(16), score int)",
+                "create table pg_log_20240101 (id bigint primary key, msg varchar(16))",
+                "create table pg_log_20240102 (id bigint primary key, msg varchar(16))",
+                "create table pg_log_20240103 (id bigint primary key, msg varchar(16))");
+        for (int i = 1; i <= 25; i++) {
+            // score有重复值
+            H2.execute(plugin, "insert into pg_user values (" + i + ", 'u" + i + "', " + (i % 4) + ")");
+        }
+        for (int i = 1; i <= 3; i++) {
+            H2.execute(plugin, "insert into pg_log_20240101 values (" + i + ", 'a')",
+                    "insert into pg_log_20240103 values (" + i + ", 'c')");
+        }
+        ArConfig config = new ArConfig("pg", plugin, new H2.Dialect());
+        config.regTable(PgUser.class);
+        config.regTable("pg_log_", PgLog.class);
+
+        H2.Plugin upper = H2.upperCasePlugin("pg_upper", "create table pg_upper (id bigint primary key, name varchar(16))",
+                "insert into pg_upper values (1, 'b'), (2, 'a'), (3, 'c'), (4, 'a')");
+        ArConfig upperConfig = new ArConfig("pg_upper", upper, new H2.Dialect());
+        upperConfig.regTable(PgUpper.class);
+    }
+
+
+    public void testPagesByPrimaryKey() {
+        List<Long> ids = new ArrayList<Long>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page<PgUser> page = new PgUser().findPage(cursor, 10);
+            for (PgUser u : page.getRecords()) {
+                ids.add(u.getLong("id"));
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (null != cursor);
+        assertEquals(3, pages);
+        assertEquals(25, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(Long.valueOf(i + 1), ids.get(i));
+        }
+    }
+
+
+    public void testDefaultPageSize() {
+        Page<PgUser> page = new PgUser().findPage(null, 0);
+        assertEquals(ArHelper.DEFAULT_PAGE_SIZE, page.getRecords().size());
+        assertTrue(page.hasNext());
+    }
+
+
+    public void testPagesByColumnWithDuplicates() {
+        Set<Long> ids = new HashSet<Long>();
+        int lastScore = -1;
+        String cursor = null;
+        do {
+            Page<PgUser> page = new PgUser().byScore(cursor, 4);
+            for (PgUser u : page.getRecords()) {
+                assertTrue(ids.add(u.getLong("id")));
+                assertTrue(u.getInt("score") >= lastScore);
+                lastScore = u.getInt("score");
+            }
+            cursor = page.getNextCursor();
+        } while (null != cursor);
+        assertEquals(25, ids.size());
+    }
+
+
+    public void testUpperCaseLabels() {
+        List<Long> ids = new ArrayList<Long>();
+        String cursor = null;
+        do {
+            Page<PgUpper> page = new PgUpper().byName(cursor, 1);
+            for (PgUpper u : page.getRecords()) {
+                ids.add(u.getLong("ID"));
+            }
+            cursor = page.getNextCursor();
+        } while (null != cursor);
+        assertEquals("[2, 4, 1, 3]", ids.toString());
+    }
+
+
+    public void testPagesAcrossSeqTables() {
+        List<String> seen = new ArrayList<String>();
+        String cursor = null;
+        do {
+            Page<PgLog> page = new PgLog().findPageInSeq(cursor, 2);
+            for (PgLog l : page.getRecords()) {
+                seen.add(l.getTableName().substring(7) + "/" + l.getLong("id"));
+            }
+            cursor = page.getNextCursor();
+        } while (null != cursor);
+        assertEquals("[20240103/1, 20240103/2, 20240103/3, 20240101/1, 20240101/2, 20240101/3]", seen.toString());
+    }
+
+
+    public void testInvalidCursor() {
+        try {
+            new PgUser().findPage("not-a-cursor", 10);
+            fail();
+        } catch (ArException expected) {
+        }
+        String cursor = new PgUser().findPage(null, 10).getNextCursor();
+        try {
+            // 按主键分页的游标不能用于按其他列分页
+            new PgUser().byScore(cursor, 10);
+            fail();
+        } catch (ArException expected) {
+        }
+    }
+}
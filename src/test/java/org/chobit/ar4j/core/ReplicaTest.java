@@ -0,0 +1,199 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+import org.chobit.ar4j.core.datasource.DataSourcePlugin;
+import org.chobit.ar4j.core.datasource.Replica;
+import org.chobit.ar4j.core.datasource.ReplicaBalancer;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ReplicaTest extends TestCase {
+
+    public static class RpUser extends Model<RpUser> {
+
+        String who() {
+            return findFirst("select * from rp_user").getString("name");
+        }
+    }
+
+    public static class RpLog extends SeqModel<RpLog> {
+
+        @Override
+        public String latestSuffix() {
+            return "2";
+        }
+
+        @Override
+        public String suffixRegex() {
+            return "\\d";
+        }
+
+        List<RpLog> all() {
+            return findInSeq("select *", "1 = 1");
+        }
+    }
+
+    private H2.Plugin primary;
+
+    private SchemaSnapshotTest.Flaky r1;
+
+    private H2.Plugin r2;
+
+    private ArConfig config;
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        primary = db("rp_p_" + getName(), "p");
+        r1 = new SchemaSnapshotTest.Flaky(db("rp_r1_" + getName(), "r1"));
+        r1.down = false;
+        r2 = db("rp_r2_" + getName(), "r2");
+        config = new ArConfig("rp_" + getName(), primary, Arrays.<DataSourcePlugin>asList(r1, r2), new H2.Dialect());
+        config.regTable(RpUser.class);
+        config.regTable("rp_log_", RpLog.class);
+    }
+
+
+    @Override
+    protected void tearDown() {
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private static H2.Plugin db(String name, String who) throws Exception {
+        return H2.plugin(name, "create table rp_user (id bigint auto_increment primary key, name varchar(16))",
+                "insert into rp_user (name) values ('" + who + "')",
+                "create table rp_log_1 (id bigint auto_increment primary key, msg varchar(16))",
+                "create table rp_log_2 (id bigint auto_increment primary key, msg varchar(16))",
+                "insert into rp_log_1 (msg) values ('" + who + "')",
+                "insert into rp_log_2 (msg) values ('" + who + "')");
+    }
+
+
+    public void testReadsAreBalancedAndWritesGoToPrimary() throws Exception {
+        Set<String> seen = new HashSet<String>();
+        for (int i = 0; i < 4; i++) {
+            seen.add(new RpUser().who());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("r1", "r2")), seen);
+        new RpUser().set("name", "w").save();
+        assertEquals(2, H2.count(primary, "select count(*) from rp_user"));
+        assertEquals(1, H2.count(r2, "select count(*) from rp_user"));
+        for (Replica r : config.getReplicas()) {
+            assertEquals(0, r.getOutstanding());
+        }
+    }
+
+
+    public void testPrimaryReads() {
+        String who = config.onPrimary(new Callable<String>() {
+            @Override
+            public String call() {
+                return new RpUser().who();
+            }
+        });
+        assertEquals("p", who);
+        Transaction tx = config.beginTransaction();
+        try {
+            assertEquals("p", new RpUser().who());
+        } finally {
+            tx.close();
+        }
+    }
+
+
+    public void testPrimaryReadsInParallelSeqQuery() {
+        executor = Executors.newFixedThreadPool(2);
+        config.setSeqExecutor(executor, 2, 0, TimeUnit.SECONDS);
+        List<RpLog> logs = config.onPrimary(new Callable<List<RpLog>>() {
+            @Override
+            public List<RpLog> call() {
+                return new RpLog().all();
+            }
+        });
+        assertEquals(2, logs.size());
+        for (RpLog l : logs) {
+            assertEquals("p", l.getString("msg"));
+        }
+        for (RpLog l : new RpLog().all()) {
+            assertFalse("p".equals(l.getString("msg")));
+        }
+    }
+
+
+    public void testFailedReplicaIsEjected() {
+        config.setReplicaEjection(2, 1, TimeUnit.MINUTES);
+        r1.down = true;
+        for (int i = 0; i < 6; i++) {
+            assertEquals("r2", new RpUser().who());
+        }
+        assertTrue(config.getReplicas().get(0).isEjected());
+        int connects = r1.connects.get();
+        for (int i = 0; i < 4; i++) {
+            new RpUser().who();
+        }
+        assertEquals(connects, r1.connects.get());
+    }
+
+
+    public void testAllReplicasDownFallsBackToPrimary() {
+        config.setReplicaEjection(1, 1, TimeUnit.MINUTES);
+        r1.down = true;
+        config.setReplicaBalancer(new ReplicaBalancer() {
+            @Override
+            public Replica choose(List<? extends Replica> candidates) {
+                return candidates.get(0);
+            }
+        });
+        assertEquals("r2", new RpUser().who());
+        assertTrue(config.getReplicas().get(0).isEjected());
+    }
+
+
+    public void testForeignReplicaFromBalancer() {
+        final List<Integer> offered = new ArrayList<Integer>();
+        config.setReplicaBalancer(new ReplicaBalancer() {
+            @Override
+            public Replica choose(final List<? extends Replica> candidates) {
+                offered.add(candidates.size());
+                final Replica last = candidates.get(candidates.size() - 1);
+                // 返回的不是候选列表中的对象，按序号匹配
+                return new Replica() {
+                    @Override
+                    public int getIndex() {
+                        return last.getIndex();
+                    }
+
+                    @Override
+                    public DataSource getDataSource() {
+                        return last.getDataSource();
+                    }
+
+                    @Override
+                    public int getOutstanding() {
+                        return 0;
+                    }
+
+                    @Override
+                    public boolean isEjected() {
+                        return false;
+                    }
+                };
+            }
+        });
+        assertEquals("r2", new RpUser().who());
+        assertEquals(Arrays.asList(2), offered);
+    }
+}
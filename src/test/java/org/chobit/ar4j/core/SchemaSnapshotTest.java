@@ -0,0 +1,86 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+import org.chobit.ar4j.core.datasource.DataSourcePlugin;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SchemaSnapshotTest extends TestCase {
+
+    public static class SnUser extends Model<SnUser> {
+    }
+
+    /**
+     * 记录获取连接次数的数据源，down为true时获取连接失败
+     */
+    static class Flaky implements DataSourcePlugin {
+
+        final AtomicInteger connects = new AtomicInteger();
+
+        volatile boolean down = true;
+
+        final DataSourcePlugin target;
+
+        Flaky(DataSourcePlugin target) {
+            this.target = target;
+        }
+
+        @Override
+        public DataSource getDataSource() {
+            return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class[]{DataSource.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if ("getConnection".equals(method.getName())) {
+                                connects.incrementAndGet();
+                                if (down) {
+                                    throw new SQLException("database is down", "08001");
+                                }
+                            }
+                            return method.invoke(target.getDataSource(), args);
+                        }
+                    });
+        }
+    }
+
+
+    public void testSnapshotAndBackoff() throws Exception {
+        H2.Plugin plugin = H2.plugin("sn", "create table sn_user (id bigint primary key, name varchar(16))");
+        File file = File.createTempFile("ar4j-schema", ".snapshot");
+        file.deleteOnExit();
+        ArConfig origin = new ArConfig("sn", plugin, new H2.Dialect());
+        origin.regTable(SnUser.class);
+        origin.saveSchema(file);
+
+        Flaky flaky = new Flaky(plugin);
+        ArConfig config = new ArConfig("sn2", flaky, new H2.Dialect());
+        config.loadSchema(file);
+        config.regTable(SnUser.class);
+        assertEquals(0, flaky.connects.get());
+        Table table = config.getTable(SnUser.class);
+        assertEquals(Table.COLUMNS_SNAPSHOT, table.getColumnsState());
+        assertEquals(2, table.getColumnClasses().size());
+
+        // 核对失败后退避，期间不再启动核对线程
+        for (int i = 0; i < 50; i++) {
+            config.ensureColumns(table);
+            Thread.sleep(10);
+        }
+        assertEquals(1, flaky.connects.get());
+        assertEquals(Table.COLUMNS_SNAPSHOT, table.getColumnsState());
+
+        flaky.down = false;
+        Thread.sleep(1100);
+        config.ensureColumns(table);
+        for (int i = 0; i < 100 && Table.COLUMNS_LOADED != table.getColumnsState(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Table.COLUMNS_LOADED, table.getColumnsState());
+    }
+}
@@ -0,0 +1,185 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class SeqModelTest extends TestCase {
+
+    public static class SqLog extends SeqModel<SqLog> {
+
+        @Override
+        public String latestSuffix() {
+            return "20240103";
+        }
+
+        @Override
+        public String suffixRegex() {
+            return "\\d{8}";
+        }
+
+        @Override
+        protected Comparable suffixKey(String suffix) {
+            return Integer.valueOf(suffix);
+        }
+
+        /**
+         * 以dt列作为写入的分表后缀
+         */
+        @Override
+        protected String suffixOf(SqLog m) {
+            return m.getString("dt");
+        }
+
+        List<SqLog> top(String orderBy, int limit) {
+            return findTopInSeq("select *", "score >= ?", orderBy, limit, 0);
+        }
+
+        List<SqLog> topIn(SuffixFilter filter, int limit) {
+            return findTopInSeq(filter, "select *", "1 = 1", "score desc", limit);
+        }
+
+        List<SqLog> all() {
+            return findInSeq("select *", "1 = 1");
+        }
+
+        List<SqLog> in(SuffixFilter filter) {
+            return findInSeq(filter, "select *", "1 = 1");
+        }
+    }
+
+    private static final String[] DAYS = {"20240101", "20240102", "20240103"};
+
+    private H2.Plugin plugin;
+
+    private ArConfig config;
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        plugin = H2.plugin("sq_" + getName());
+        for (String day : DAYS) {
+            H2.execute(plugin, "create table sq_log_" + day + " (id bigint auto_increment primary key, dt varchar(8), score int)");
+        }
+        config = new ArConfig("sq_" + getName(), plugin, new H2.Dialect());
+        config.regTable("sq_log_", SqLog.class);
+    }
+
+
+    @Override
+    protected void tearDown() {
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void insertScores() throws Exception {
+        // 分表中的score交错分布，每个分表内的score按插入顺序递增
+        for (int i = 0; i < 30; i++) {
+            String day = DAYS[i % 3];
+            H2.execute(plugin, "insert into sq_log_" + day + " (dt, score) values ('" + day + "', " + i + ")");
+        }
+    }
+
+
+    private static List<Integer> scores(List<SqLog> logs) {
+        List<Integer> list = new ArrayList<Integer>();
+        for (SqLog l : logs) {
+            list.add(l.getInt("score"));
+        }
+        return list;
+    }
+
+
+    public void testTopAcrossTables() throws Exception {
+        insertScores();
+        assertEquals(Arrays.asList(29, 28, 27, 26, 25), scores(new SqLog().top("score desc", 5)));
+        assertEquals(Arrays.asList(0, 1, 2), scores(new SqLog().top("SCORE", 3)));
+        List<SqLog> top = new SqLog().top("dt desc, score desc", 4);
+        assertEquals(Arrays.asList(29, 26, 23, 20), scores(top));
+        assertEquals("sq_log_20240103", top.get(0).getTableName());
+        assertEquals(30, new SqLog().top("score", 100).size());
+    }
+
+
+    public void testTopInParallel() throws Exception {
+        insertScores();
+        executor = Executors.newFixedThreadPool(3);
+        config.setSeqExecutor(executor, 3, 10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(29, 28, 27, 26, 25), scores(new SqLog().top("score desc", 5)));
+    }
+
+
+    public void testTopWithSuffixFilter() throws Exception {
+        insertScores();
+        // 20240102分表中的score为1, 4, 7 ... 28
+        List<SqLog> top = new SqLog().topIn(SuffixFilter.between(20240102, 20240102), 3);
+        assertEquals(Arrays.asList(28, 25, 22), scores(top));
+        assertEquals(20, new SqLog().in(SuffixFilter.atMost(20240102)).size());
+        assertTrue(new SqLog().in(SuffixFilter.atLeast(20240104)).isEmpty());
+    }
+
+
+    public void testInvalidOrderByRejected() {
+        try {
+            new SqLog().top("length(dt) desc", 3);
+            fail();
+        } catch (RuntimeException expected) {
+        }
+    }
+
+
+    public void testBatchSaveRoutedBySuffix() throws Exception {
+        List<SqLog> rows = new ArrayList<SqLog>();
+        for (int i = 0; i < 9; i++) {
+            rows.add(new SqLog().set("dt", DAYS[i % 3]).set("score", i));
+        }
+        rows.add(new SqLog().set("score", 100));
+        new SqLog().batchSave(rows);
+        assertEquals(3, H2.count(plugin, "select count(*) from sq_log_20240101"));
+        assertEquals(3, H2.count(plugin, "select count(*) from sq_log_20240102"));
+        // 没有后缀的记录写入最新的分表
+        assertEquals(4, H2.count(plugin, "select count(*) from sq_log_20240103"));
+        assertEquals("sq_log_20240101", rows.get(0).getTableName());
+        assertEquals("sq_log_20240103", rows.get(9).getTableName());
+    }
+
+
+    public void testParallelBatchSaveReportsFailure() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+        config.setSeqExecutor(executor, 2, 10, TimeUnit.SECONDS);
+        config.setSeqParallelWrites(true);
+        List<SqLog> rows = new ArrayList<SqLog>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(new SqLog().set("dt", DAYS[i % 2]).set("score", i));
+        }
+        new SqLog().batchSave(rows);
+        assertEquals(5, H2.count(plugin, "select count(*) from sq_log_20240101"));
+        assertEquals(5, H2.count(plugin, "select count(*) from sq_log_20240102"));
+
+        rows = Arrays.asList(new SqLog().set("dt", "20240101").set("score", 1),
+                new SqLog().set("dt", "19990101").set("score", 1));
+        try {
+            new SqLog().batchSave(rows);
+            fail();
+        } catch (RuntimeException expected) {
+        }
+        // 分表之间不保证原子性
+        assertEquals(6, H2.count(plugin, "select count(*) from sq_log_20240101"));
+    }
+
+
+    public void testSaveRoutedBySuffix() throws Exception {
+        SqLog log = new SqLog().set("dt", "20240102").set("score", 1);
+        assertTrue(log.save());
+        assertEquals("sq_log_20240102", log.getTableName());
+        assertEquals(1, H2.count(plugin, "select count(*) from sq_log_20240102"));
+    }
+}
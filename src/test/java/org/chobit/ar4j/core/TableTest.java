@@ -0,0 +1,45 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TableTest extends TestCase {
+
+    public static class TbUser extends Model<TbUser> {
+    }
+
+
+    public void testLayoutKeptWhenColumnNamesUnchanged() {
+        Table table = new Table(TbUser.class, "tb_user", "id");
+        assertEquals(Table.COLUMNS_EMPTY, table.getColumnsState());
+        Map<String, Class> columns = new HashMap<String, Class>();
+        columns.put("id", Long.class);
+        columns.put("name", String.class);
+        table.setColumnClasses(columns, Table.COLUMNS_SNAPSHOT);
+        Props.Layout layout = table.getLayout();
+        assertEquals(Table.COLUMNS_SNAPSHOT, table.getColumnsState());
+
+        columns.put("id", Integer.class);
+        table.setColumnClasses(columns, Table.COLUMNS_LOADED);
+        assertSame(layout, table.getLayout());
+        assertEquals(Integer.class, table.getPrimaryKeyClass());
+        assertEquals(Table.COLUMNS_LOADED, table.getColumnsState());
+
+        columns.put("age", Integer.class);
+        table.setColumnClasses(columns, Table.COLUMNS_LOADED);
+        assertNotSame(layout, table.getLayout());
+        assertEquals(3, table.getLayout().getNames().length);
+    }
+
+
+    public void testRegisteredTableHasColumns() throws Exception {
+        H2.Plugin plugin = H2.plugin("tb", "create table tb_user (id bigint primary key, name varchar(16))");
+        ArConfig config = new ArConfig("tb", plugin, new H2.Dialect());
+        config.regTable(TbUser.class);
+        Table table = Ar.findMeta(TbUser.class).getTable();
+        assertEquals(Table.COLUMNS_LOADED, table.getColumnsState());
+        assertEquals(2, table.getLayout().getNames().length);
+    }
+}
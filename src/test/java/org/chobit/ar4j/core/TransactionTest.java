@@ -0,0 +1,77 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class TransactionTest extends TestCase {
+
+    public static class TxUser extends Model<TxUser> {
+    }
+
+    private H2.Plugin plugin;
+
+    private ArConfig config;
+
+    @Override
+    protected void setUp() throws Exception {
+        plugin = H2.plugin("tx_" + getName(), "create table tx_user (id bigint auto_increment primary key, name varchar(16))");
+        config = new ArConfig("tx_" + getName(), plugin, new H2.Dialect());
+        config.regTable(TxUser.class);
+    }
+
+
+    public void testCommit() throws Exception {
+        Transaction tx = config.beginTransaction();
+        try {
+            new TxUser().set("name", "a").save();
+            new TxUser().batchSave(Arrays.asList(new TxUser().set("name", "b"), new TxUser().set("name", "c")));
+            tx.commit();
+        } finally {
+            tx.close();
+        }
+        assertEquals(3, H2.count(plugin, "select count(*) from tx_user"));
+    }
+
+
+    public void testCloseWithoutCommitRollsBack() throws Exception {
+        Transaction tx = config.beginTransaction();
+        try {
+            new TxUser().set("name", "a").save();
+        } finally {
+            tx.close();
+        }
+        assertEquals(0, H2.count(plugin, "select count(*) from tx_user"));
+    }
+
+
+    public void testReusedStatementDropsFailedBatch() throws Exception {
+        Transaction tx = config.beginTransaction();
+        try {
+            try {
+                // 第二条记录绑定参数时失败，第一条已经加入批次
+                new TxUser().batchSave(Arrays.asList(new TxUser().set("name", "a"), new TxUser().set("name", new Object())));
+                fail();
+            } catch (RuntimeException expected) {
+            }
+            new TxUser().batchSave(Arrays.asList(new TxUser().set("name", "b")));
+            tx.commit();
+        } finally {
+            tx.close();
+        }
+        assertEquals(1, H2.count(plugin, "select count(*) from tx_user"));
+        assertEquals(1, H2.count(plugin, "select count(*) from tx_user where name = 'b'"));
+    }
+
+
+    public void testNestedTransactionRejected() {
+        Transaction tx = config.beginTransaction();
+        try {
+            config.beginTransaction();
+            fail();
+        } catch (RuntimeException expected) {
+        } finally {
+            tx.close();
+        }
+    }
+}
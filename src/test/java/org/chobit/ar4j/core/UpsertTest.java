@@ -0,0 +1,163 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+import org.chobit.ar4j.core.dialect.UpsertDialect;
+import org.chobit.ar4j.core.dialect.Upserts;
+import org.chobit.ar4j.core.exception.ArConfigException;
+import org.chobit.ar4j.core.exception.ArException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class UpsertTest extends TestCase {
+
+    public static class UpUser extends Model<UpUser> {
+    }
+
+    public static class UpItem extends Model<UpItem> {
+    }
+
+    public static class UpPlain extends Model<UpPlain> {
+    }
+
+    static class MergeDialect extends H2.Dialect implements UpsertDialect {
+
+        @Override
+        public String sqlUpsert(String tableName, String[] columns, String[] keys) {
+            return Upserts.merge(tableName, columns, keys);
+        }
+    }
+
+    static class OnDuplicateKeyDialect extends H2.Dialect implements UpsertDialect {
+
+        @Override
+        public String sqlUpsert(String tableName, String[] columns, String[] keys) {
+            return Upserts.onDuplicateKeyUpdate(tableName, columns, keys);
+        }
+    }
+
+    private static H2.Plugin mergePlugin;
+
+    private static H2.Plugin odkuPlugin;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (null == mergePlugin) {
+            mergePlugin = H2.plugin("up_merge", "create table up_user (id bigint primary key, name varchar(16), age int)");
+            ArConfig merge = new ArConfig("up_merge", mergePlugin, new MergeDialect());
+            merge.setBatchSize(3);
+            merge.regTable(UpUser.class);
+
+            odkuPlugin = H2.plugin("up_odku", "create table up_item (id bigint primary key, name varchar(16), age int)",
+                    "create table up_plain (id bigint primary key, name varchar(16))");
+            ArConfig odku = new ArConfig("up_odku", odkuPlugin, new OnDuplicateKeyDialect());
+            odku.setBatchSize(3);
+            odku.regTable(UpItem.class);
+
+            ArConfig plain = new ArConfig("up_plain", odkuPlugin, new H2.Dialect());
+            plain.regTable(UpPlain.class);
+        }
+        H2.execute(mergePlugin, "delete from up_user", "insert into up_user values (1, 'a', 1)");
+        H2.execute(odkuPlugin, "delete from up_item", "insert into up_item values (1, 'a', 1)");
+    }
+
+
+    public void testSqlForms() {
+        String[] columns = {"id", "name"};
+        String[] keys = {"id"};
+        assertEquals("insert into t (id, name) values (?, ?) on duplicate key update name = values(name)",
+                Upserts.onDuplicateKeyUpdate("t", columns, keys));
+        assertEquals("insert into t (id) values (?) on duplicate key update id = id",
+                Upserts.onDuplicateKeyUpdate("t", keys, keys));
+        assertEquals("insert into t (id, name) values (?, ?) on conflict (id) do update set name = excluded.name",
+                Upserts.onConflictDoUpdate("t", columns, keys));
+        assertEquals("insert into t (id) values (?) on conflict (id) do nothing",
+                Upserts.onConflictDoUpdate("t", keys, keys));
+        assertEquals("merge into t using (values (?, ?)) s_ (id, name) on (t.id = s_.id)"
+                        + " when matched then update set name = s_.name"
+                        + " when not matched then insert (id, name) values (s_.id, s_.name);",
+                Upserts.merge("t", columns, keys));
+    }
+
+
+    public void testKeyOnlyMerge() throws Exception {
+        // 除主键外没有需要更新的列，列名不区分大小写，记录已存在时保持不变
+        assertEquals("merge into t using (values (?)) s_ (ID) on (t.id = s_.id)"
+                        + " when not matched then insert (ID) values (s_.ID);",
+                Upserts.merge("t", new String[]{"ID"}, new String[]{"id"}));
+        new UpUser().set("id", 1L).upsert();
+        new UpUser().batchUpsert(Arrays.asList(new UpUser().set("id", 1L), new UpUser().set("id", 2L)));
+        assertEquals(2, H2.count(mergePlugin, "select count(*) from up_user"));
+        UpUser first = new UpUser().findByPrimaryKey(1L);
+        assertEquals("a", first.getString("name"));
+        assertEquals(Integer.valueOf(1), first.getInt("age"));
+        assertNull(new UpUser().findByPrimaryKey(2L).getString("name"));
+    }
+
+
+    public void testMerge() throws Exception {
+        assertTrue(new UpUser().set("id", 1L).set("name", "a2").upsert());
+        assertTrue(new UpUser().set("id", 2L).set("name", "b").set("age", 2).upsert());
+        UpUser first = new UpUser().findByPrimaryKey(1L);
+        // 未设置的列保持不变
+        assertEquals("a2", first.getString("name"));
+        assertEquals(Integer.valueOf(1), first.getInt("age"));
+
+        List<UpUser> batch = new ArrayList<UpUser>();
+        for (long i = 1; i <= 8; i++) {
+            batch.add(new UpUser().set("id", i).set("name", "n" + i));
+        }
+        batch.add(new UpUser().set("id", 9L).set("name", "n9").set("age", 9));
+        new UpUser().batchUpsert(batch);
+        assertEquals(9, H2.count(mergePlugin, "select count(*) from up_user"));
+        assertEquals("n1", new UpUser().findByPrimaryKey(1L).getString("name"));
+        assertEquals(Integer.valueOf(2), new UpUser().findByPrimaryKey(2L).getInt("age"));
+        assertEquals(Integer.valueOf(9), new UpUser().findByPrimaryKey(9L).getInt("age"));
+    }
+
+
+    public void testOnDuplicateKeyUpdate() throws Exception {
+        assertTrue(new UpItem().set("id", 1L).set("name", "a2").upsert());
+        new UpItem().set("id", 2L).set("name", "b").upsert();
+        List<UpItem> batch = new ArrayList<UpItem>();
+        for (long i = 1; i <= 7; i++) {
+            batch.add(new UpItem().set("id", i).set("age", (int) i * 10));
+        }
+        batch.add(new UpItem().set("id", 8L));
+        new UpItem().batchUpsert(batch);
+        assertEquals(8, H2.count(odkuPlugin, "select count(*) from up_item"));
+        UpItem first = new UpItem().findByPrimaryKey(1L);
+        assertEquals("a2", first.getString("name"));
+        assertEquals(Integer.valueOf(10), first.getInt("age"));
+        assertEquals("b", new UpItem().findByPrimaryKey(2L).getString("name"));
+
+        new UpItem().batchUpsert(Arrays.asList(new UpItem().set("id", 8L)));
+        assertEquals(8, H2.count(odkuPlugin, "select count(*) from up_item"));
+    }
+
+
+    public void testPrimaryKeyRequired() throws Exception {
+        try {
+            new UpUser().set("name", "x").upsert();
+            fail();
+        } catch (ArException expected) {
+        }
+        try {
+            new UpItem().batchUpsert(Arrays.asList(new UpItem().set("id", 3L), new UpItem().set("name", "x")));
+            fail();
+        } catch (ArException expected) {
+        }
+        // 检查在写入之前进行，不会写入部分记录
+        assertEquals(1, H2.count(odkuPlugin, "select count(*) from up_item"));
+    }
+
+
+    public void testDialectWithoutUpsert() {
+        try {
+            new UpPlain().set("id", 1L).upsert();
+            fail();
+        } catch (ArConfigException expected) {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.chobit.ar4j.core;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WriteBehindBufferTest extends TestCase {
+
+    public static class WbUser extends Model<WbUser> {
+    }
+
+    public static class WbOther extends Model<WbOther> {
+    }
+
+    private static H2.Plugin plugin;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (null == plugin) {
+            plugin = H2.plugin("wb", "create table wb_user (id bigint auto_increment primary key, name varchar(16) not null)",
+                    "create table wb_other (id bigint auto_increment primary key)");
+            ArConfig config = new ArConfig("wb", plugin, new H2.Dialect());
+            config.regTable(WbUser.class);
+            config.regTable(WbOther.class);
+        }
+        H2.execute(plugin, "delete from wb_user");
+    }
+
+
+    public void testFlushOnBatchSizeAndClose() throws Exception {
+        WriteBehindBuffer<WbUser> buffer = new WriteBehindBuffer<WbUser>(WbUser.class, 100, 10, 1, TimeUnit.HOURS,
+                WriteBehindBuffer.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 25; i++) {
+            assertTrue(buffer.add(new WbUser().set("name", "u" + i)));
+        }
+        for (int i = 0; i < 100 && buffer.getWrittenCount() < 20; i++) {
+            Thread.sleep(10);
+        }
+        // 后台写入时会一并取走写入期间提交的记录
+        assertTrue(buffer.getWrittenCount() >= 20);
+        buffer.close();
+        assertEquals(25, buffer.getWrittenCount());
+        assertEquals(25, H2.count(plugin, "select count(*) from wb_user"));
+        try {
+            buffer.add(new WbUser().set("name", "late"));
+            fail();
+        } catch (RuntimeException expected) {
+        }
+    }
+
+
+    public void testRejectWhenFull() throws Exception {
+        WriteBehindBuffer<WbUser> buffer = new WriteBehindBuffer<WbUser>(WbUser.class, 2, 2, 1, TimeUnit.HOURS,
+                WriteBehindBuffer.OverflowPolicy.REJECT);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        // 失败处理返回之前批次仍占用缓冲区的容量
+        buffer.setFailureHandler(new WriteBehindBuffer.FailureHandler<WbUser>() {
+            @Override
+            public void onFailure(List<WbUser> batch, Throwable error) {
+                entered.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            assertTrue(buffer.add(new WbUser().set("no_such_col", "a")));
+            assertTrue(buffer.add(new WbUser().set("no_such_col", "b")));
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            assertFalse(buffer.add(new WbUser().set("name", "c")));
+            resume.countDown();
+        } finally {
+            resume.countDown();
+            buffer.close();
+        }
+        assertEquals(2, buffer.getFailedCount());
+    }
+
+
+    public void testFailedBatchGoesToHandler() throws Exception {
+        WriteBehindBuffer<WbUser> buffer = new WriteBehindBuffer<WbUser>(WbUser.class, 10, 5, 1, TimeUnit.HOURS,
+                WriteBehindBuffer.OverflowPolicy.BLOCK);
+        final AtomicInteger failed = new AtomicInteger();
+        buffer.setFailureHandler(new WriteBehindBuffer.FailureHandler<WbUser>() {
+            @Override
+            public void onFailure(List<WbUser> batch, Throwable error) {
+                failed.addAndGet(batch.size());
+            }
+        });
+        buffer.add(new WbUser().set("name", "a"));
+        buffer.add(new WbUser().set("name", null));
+        buffer.close();
+        assertEquals(2, failed.get());
+        assertEquals(2, buffer.getFailedCount());
+        // 失败的批次整体回滚
+        assertEquals(0, H2.count(plugin, "select count(*) from wb_user"));
+    }
+
+
+    public void testCapacityLessThanBatchSizeRejected() {
+        try {
+            new WriteBehindBuffer<WbUser>(WbUser.class, 5, 10, 1, TimeUnit.SECONDS, WriteBehindBuffer.OverflowPolicy.BLOCK);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public void testOtherModelClassRejected() {
+        WriteBehindBuffer buffer = new WriteBehindBuffer<WbUser>(WbUser.class, 10, 5, 1, TimeUnit.HOURS,
+                WriteBehindBuffer.OverflowPolicy.BLOCK);
+        try {
+            buffer.add(new WbOther());
+            fail();
+        } catch (IllegalArgumentException expected) {
+        } finally {
+            buffer.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.chobit.ar4j.core.cache;
+
+import junit.framework.TestCase;
+
+public class LocalCacheTest extends TestCase {
+
+    public void testPutAndGet() {
+        LocalCache cache = new LocalCache(100);
+        cache.put("a", 1);
+        assertEquals(Integer.valueOf(1), cache.<Integer>get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+
+    public void testNullValueInvalidates() {
+        LocalCache cache = new LocalCache(100);
+        cache.put("a", 1);
+        cache.put("a", null);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+
+    public void testEvictsLeastRecentlyUsed() {
+        // 只有一个分段时按LRU淘汰
+        LocalCache cache = new LocalCache(1);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertNull(cache.get("a"));
+        assertEquals(Integer.valueOf(2), cache.<Integer>get("b"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+
+    public void testAccessOrderProtectsRecentEntries() {
+        LocalCache cache = new LocalCache(32);
+        for (int i = 0; i < 32; i++) {
+            cache.put("k" + i, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.put("x" + i, i);
+            assertNotNull(cache.get("x" + i));
+        }
+        assertTrue(cache.size() <= 32);
+        assertTrue(cache.getEvictionCount() >= 1000);
+    }
+
+
+    public void testExpiredEntryIsRemoved() throws Exception {
+        LocalCache cache = new LocalCache(10, 20);
+        cache.put("a", 1);
+        cache.put("b", 2, 0);
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        assertEquals(Integer.valueOf(2), cache.<Integer>get("b"));
+        assertEquals(1, cache.size());
+    }
+
+
+    public void testMaxSizeMustBePositive() {
+        try {
+            new LocalCache(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}